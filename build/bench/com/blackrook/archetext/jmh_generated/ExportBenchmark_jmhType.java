@@ -0,0 +1,4 @@
+package com.blackrook.archetext.jmh_generated;
+public class ExportBenchmark_jmhType extends ExportBenchmark_jmhType_B3 {
+}
+
@@ -0,0 +1,4 @@
+package com.blackrook.archetext.jmh_generated;
+public class FieldBenchmark_jmhType extends FieldBenchmark_jmhType_B3 {
+}
+
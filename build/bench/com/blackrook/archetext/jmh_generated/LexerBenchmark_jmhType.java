@@ -0,0 +1,4 @@
+package com.blackrook.archetext.jmh_generated;
+public class LexerBenchmark_jmhType extends LexerBenchmark_jmhType_B3 {
+}
+
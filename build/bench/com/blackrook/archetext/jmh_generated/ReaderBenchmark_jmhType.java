@@ -0,0 +1,4 @@
+package com.blackrook.archetext.jmh_generated;
+public class ReaderBenchmark_jmhType extends ReaderBenchmark_jmhType_B3 {
+}
+
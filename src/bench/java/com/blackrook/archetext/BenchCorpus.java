@@ -0,0 +1,233 @@
+/*******************************************************************************
+ * Copyright (c) 2016-2020 Black Rook Software
+ * This program and the accompanying materials are made available under the 
+ * terms of the GNU Lesser Public License v2.1 which accompanies this 
+ * distribution, and is available at 
+ * http://www.gnu.org/licenses/old-licenses/lgpl-2.1.html
+ ******************************************************************************/
+package com.blackrook.archetext;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.Charset;
+import java.util.HashMap;
+import java.util.Map;
+
+import com.blackrook.archetext.struct.PreprocessorLexer.ArchiveIncluder;
+import com.blackrook.archetext.struct.PreprocessorLexer.Includer;
+
+/**
+ * Synthetic ArcheText sources for the benchmarks.
+ * <p>
+ * Every corpus is held in memory and read through an {@link ArchiveIncluder}, 
+ * so that the benchmarks measure reading and not the filesystem.
+ * Objects are of type <code>thing</code>, and the fields <code>a</code>, <code>b</code>, <code>c</code>, and <code>d</code>
+ * are always an integer, a string, a float, and a boolean.
+ * @author Matthew Tropiano
+ */
+public final class BenchCorpus
+{
+	/** Name of the first stream in every corpus. */
+	public static final String MAIN = "main.txt";
+	/** Length of inheritance chains in {@link Shape#DEEP} corpora. */
+	public static final int DEFAULT_DEPTH = 16;
+	/** Amount of included files in {@link Shape#INCLUDES} corpora, per level. */
+	public static final int INCLUDE_FANOUT = 8;
+	/** Amount of elements per list in {@link Shape#LISTS} corpora. */
+	public static final int LIST_SIZE = 64;
+	
+	/**
+	 * Corpus shapes.
+	 */
+	public enum Shape
+	{
+		/** Objects with a few literal fields each. */
+		FLAT,
+		/** Chains of objects that each inherit from the previous one. */
+		DEEP,
+		/** Objects spread across two levels of includes. */
+		INCLUDES,
+		/** Objects whose fields are expressions on other fields. */
+		EXPRESSIONS,
+		/** Objects with large list and set fields. */
+		LISTS;
+	}
+	
+	/** Path to file contents. */
+	private Map<String, byte[]> files;
+	
+	private BenchCorpus(Map<String, byte[]> files)
+	{
+		this.files = files;
+	}
+	
+	/**
+	 * Creates a new corpus.
+	 * @param shape the corpus shape.
+	 * @param objects the amount of objects to create (roughly).
+	 * @return the new corpus.
+	 */
+	public static BenchCorpus create(Shape shape, int objects)
+	{
+		switch (shape)
+		{
+			case FLAT:
+			{
+				StringBuilder sb = new StringBuilder();
+				for (int i = 0; i < objects; i++)
+					appendFlat(sb, i);
+				return single(sb);
+			}
+			case DEEP:
+				return deep(Math.max(1, objects / DEFAULT_DEPTH), DEFAULT_DEPTH);
+			case INCLUDES:
+				return includes(objects);
+			case EXPRESSIONS:
+			{
+				StringBuilder sb = new StringBuilder();
+				for (int i = 0; i < objects; i++)
+				{
+					sb.append("thing \"e").append(i).append("\" { ");
+					sb.append("a = ").append(i).append("; ");
+					sb.append("b = \"e\" + a; ");
+					sb.append("c = a * 1.5 - 4; ");
+					sb.append("d = !false & true; ");
+					sb.append("e = (a << 2) | 7 ^ a % 5; ");
+					sb.append("f = [a, c, e]; ");
+					sb.append("}\n");
+				}
+				return single(sb);
+			}
+			case LISTS:
+			{
+				StringBuilder sb = new StringBuilder();
+				for (int i = 0; i < objects; i++)
+				{
+					sb.append("thing \"l").append(i).append("\" { a = ").append(i).append("; b = \"l").append(i).append("\"; c = 0.5; d = false; ");
+					appendList(sb, "ints", '[', ']', i, "", "");
+					appendList(sb, "floats", '[', ']', i, "", ".5");
+					appendList(sb, "strings", '<', '>', i, "\"s", "\"");
+					sb.append("}\n");
+				}
+				return single(sb);
+			}
+			default:
+				throw new IllegalArgumentException("Bad shape.");
+		}
+	}
+
+	/**
+	 * Creates a corpus of inheritance chains.
+	 * The first object of chain <code>c</code> is named <code>"d{c}_0"</code>, and declares all of the common fields.
+	 * Every other object in a chain declares one field, <code>f{n}</code>, where <code>n</code> is its place in the chain.
+	 * @param chains the amount of chains.
+	 * @param depth the amount of objects per chain.
+	 * @return the new corpus.
+	 */
+	public static BenchCorpus deep(int chains, int depth)
+	{
+		StringBuilder sb = new StringBuilder();
+		for (int c = 0; c < chains; c++)
+		{
+			sb.append("thing \"d").append(c).append("_0\" { a = ").append(c).append("; b = \"d").append(c).append("\"; c = 1.5; d = true; f0 = 0; }\n");
+			for (int n = 1; n < depth; n++)
+			{
+				sb.append("thing \"d").append(c).append('_').append(n).append("\" : thing \"d").append(c).append('_').append(n - 1).append("\" { ");
+				sb.append('f').append(n).append(" = ").append(n).append("; }\n");
+			}
+		}
+		return single(sb);
+	}
+	
+	/**
+	 * @return the text of the first stream.
+	 */
+	public String getText()
+	{
+		return new String(files.get(MAIN), Charset.defaultCharset());
+	}
+	
+	/**
+	 * @return the total size of this corpus in bytes, all files included.
+	 */
+	public long getSize()
+	{
+		long out = 0L;
+		for (byte[] data : files.values())
+			out += data.length;
+		return out;
+	}
+	
+	/**
+	 * @return a new includer for this corpus' files.
+	 */
+	public Includer getIncluder()
+	{
+		return new ArchiveIncluder(files);
+	}
+	
+	/**
+	 * Reads this corpus into a new root.
+	 * @return the new root.
+	 * @throws IOException if a stream cannot be read.
+	 */
+	public ArcheTextRoot read() throws IOException
+	{
+		Includer includer = getIncluder();
+		try (InputStream in = includer.getIncludeResource(MAIN))
+		{
+			return ArcheTextReader.read(MAIN, in, includer);
+		}
+	}
+	
+	private static BenchCorpus single(StringBuilder sb)
+	{
+		Map<String, byte[]> files = new HashMap<>();
+		files.put(MAIN, sb.toString().getBytes(Charset.defaultCharset()));
+		return new BenchCorpus(files);
+	}
+	
+	private static BenchCorpus includes(int objects)
+	{
+		Map<String, byte[]> files = new HashMap<>();
+		int leaves = INCLUDE_FANOUT * INCLUDE_FANOUT;
+		int perLeaf = Math.max(1, objects / leaves);
+		int next = 0;
+		
+		StringBuilder main = new StringBuilder();
+		for (int i = 0; i < INCLUDE_FANOUT; i++)
+		{
+			main.append("#include \"part").append(i).append("/index.txt\"\n");
+			StringBuilder index = new StringBuilder();
+			for (int j = 0; j < INCLUDE_FANOUT; j++)
+			{
+				index.append("#include \"file").append(j).append(".txt\"\n");
+				StringBuilder leaf = new StringBuilder();
+				for (int k = 0; k < perLeaf; k++)
+					appendFlat(leaf, next++);
+				files.put("part" + i + "/file" + j + ".txt", leaf.toString().getBytes(Charset.defaultCharset()));
+			}
+			files.put("part" + i + "/index.txt", index.toString().getBytes(Charset.defaultCharset()));
+		}
+		files.put(MAIN, main.toString().getBytes(Charset.defaultCharset()));
+		return new BenchCorpus(files);
+	}
+
+	private static void appendFlat(StringBuilder sb, int i)
+	{
+		sb.append("thing \"t").append(i).append("\" { a = ").append(i).append("; b = \"name").append(i).append("\"; c = ").append(i).append(".5; d = true; }\n");
+	}
+	
+	private static void appendList(StringBuilder sb, String name, char start, char end, int seed, String prefix, String suffix)
+	{
+		sb.append(name).append(" = ").append(start);
+		for (int i = 0; i < LIST_SIZE; i++)
+		{
+			if (i > 0)
+				sb.append(", ");
+			sb.append(prefix).append(seed + i).append(suffix);
+		}
+		sb.append(end).append("; ");
+	}
+	
+}
@@ -0,0 +1,319 @@
+/*******************************************************************************
+ * Copyright (c) 2016-2020 Black Rook Software
+ * This program and the accompanying materials are made available under the 
+ * terms of the GNU Lesser Public License v2.1 which accompanies this 
+ * distribution, and is available at 
+ * http://www.gnu.org/licenses/old-licenses/lgpl-2.1.html
+ ******************************************************************************/
+package com.blackrook.archetext;
+
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.Charset;
+import java.util.Random;
+
+/**
+ * Generates large, reproducible ArcheText corpora on disk.
+ * <p>
+ * A corpus has {@link #setTypes(int) N types} named <code>type{n}</code>, each with {@link #setObjectsPerType(int) M objects}
+ * named <code>o{i}</code>. Each type's objects are arranged in trees where each object has up to 
+ * {@link #setFanout(int) fan-out} children, at most {@link #setDepth(int) depth} levels deep.
+ * Every object declares <code>id</code>, <code>name</code>, <code>weight</code> and (if the list size is not 0) <code>values</code>,
+ * which matches {@link LoadObject}.
+ * <p>
+ * Objects are written to files of {@link #setObjectsPerFile(int) a set amount of objects}, which are included from 
+ * <code>main.txt</code> through {@link #setIncludeDepth(int) a set amount of nested include levels}. A fraction of the 
+ * fields ({@link #setMacroDensity(double) macro density}) are written with macros defined at the top of <code>main.txt</code>.
+ * The same settings and seed always produce the same files.
+ * @author Matthew Tropiano
+ */
+public class CorpusGenerator
+{
+	/** Name of the first file in the corpus. */
+	public static final String MAIN = "main.txt";
+	
+	private static final String PRELUDE = 
+		"#define SCALE(x) ((x) * 0.5)\n" +
+		"#define PREFIX \"gen-\"\n";
+	
+	private int types;
+	private int objectsPerType;
+	private int depth;
+	private int fanout;
+	private int objectsPerFile;
+	private int includeDepth;
+	private double macroDensity;
+	private int listSize;
+	private long seed;
+	
+	/**
+	 * Creates a new generator with default settings.
+	 */
+	public CorpusGenerator()
+	{
+		this.types = 8;
+		this.objectsPerType = 1000;
+		this.depth = 4;
+		this.fanout = 4;
+		this.objectsPerFile = 500;
+		this.includeDepth = 2;
+		this.macroDensity = 0.1;
+		this.listSize = 8;
+		this.seed = 0L;
+	}
+
+	/**
+	 * Sets the amount of types.
+	 * @param types the amount of types. Must be at least 1.
+	 */
+	public void setTypes(int types)
+	{
+		this.types = Math.max(1, types);
+	}
+
+	/**
+	 * Sets the amount of objects per type.
+	 * @param objectsPerType the amount of objects. Must be at least 1.
+	 */
+	public void setObjectsPerType(int objectsPerType)
+	{
+		this.objectsPerType = Math.max(1, objectsPerType);
+	}
+
+	/**
+	 * @return the amount of objects per type.
+	 */
+	public int getObjectsPerType()
+	{
+		return objectsPerType;
+	}
+
+	/**
+	 * Sets the maximum depth of inheritance. 1 means that no object has parents.
+	 * @param depth the depth. Must be at least 1.
+	 */
+	public void setDepth(int depth)
+	{
+		this.depth = Math.max(1, depth);
+	}
+
+	/**
+	 * Sets the maximum amount of children per object.
+	 * @param fanout the amount of children. Must be at least 1.
+	 */
+	public void setFanout(int fanout)
+	{
+		this.fanout = Math.max(1, fanout);
+	}
+
+	/**
+	 * Sets the amount of objects per file.
+	 * @param objectsPerFile the amount of objects per file. Must be at least 1.
+	 */
+	public void setObjectsPerFile(int objectsPerFile)
+	{
+		this.objectsPerFile = Math.max(1, objectsPerFile);
+	}
+
+	/**
+	 * Sets the amount of include levels between <code>main.txt</code> and the files that have objects.
+	 * 0 puts every object in <code>main.txt</code>.
+	 * @param includeDepth the include depth.
+	 */
+	public void setIncludeDepth(int includeDepth)
+	{
+		this.includeDepth = Math.max(0, includeDepth);
+	}
+
+	/**
+	 * Sets the fraction of fields that use macros.
+	 * @param macroDensity the fraction, from 0 to 1.
+	 */
+	public void setMacroDensity(double macroDensity)
+	{
+		this.macroDensity = Math.min(Math.max(macroDensity, 0.0), 1.0);
+	}
+
+	/**
+	 * Sets the amount of elements in each object's <code>values</code> list.
+	 * @param listSize the list size. 0 leaves out the list.
+	 */
+	public void setListSize(int listSize)
+	{
+		this.listSize = Math.max(0, listSize);
+	}
+
+	/**
+	 * Sets the random seed for macro placement.
+	 * @param seed the seed.
+	 */
+	public void setSeed(long seed)
+	{
+		this.seed = seed;
+	}
+
+	/**
+	 * @return the amount of types.
+	 */
+	public int getTypes()
+	{
+		return types;
+	}
+
+	/**
+	 * @return the total amount of objects that this generates.
+	 */
+	public long getObjectCount()
+	{
+		return (long)types * objectsPerType;
+	}
+	
+	/**
+	 * Writes a corpus to a directory.
+	 * @param directory the target directory. Created if it does not exist.
+	 * @return the main file of the corpus.
+	 * @throws IOException if a file cannot be written.
+	 */
+	public File generate(File directory) throws IOException
+	{
+		if (!directory.exists() && !directory.mkdirs())
+			throw new IOException("Could not create directory " + directory);
+		
+		State state = new State(new Random(seed));
+		long files = (getObjectCount() + objectsPerFile - 1) / objectsPerFile;
+		int branches = includeDepth > 0 ? Math.max(2, (int)Math.ceil(Math.pow(files, 1.0 / includeDepth))) : 1;
+		
+		File main = new File(directory, MAIN);
+		try (Writer writer = open(main))
+		{
+			writer.write(PRELUDE);
+			if (includeDepth == 0)
+				writeObjects(writer, state, getObjectCount());
+			else
+				writeIncludes(writer, directory, state, 1, 0, files, branches);
+		}
+		return main;
+	}
+	
+	/**
+	 * Returns the total size of the files in a directory.
+	 * @param directory the directory.
+	 * @return the size in bytes.
+	 */
+	public static long getSize(File directory)
+	{
+		long out = 0L;
+		File[] files = directory.listFiles();
+		if (files != null) for (File f : files)
+			out += f.isDirectory() ? getSize(f) : f.length();
+		return out;
+	}
+	
+	// Writes includes for the object files in [start, start + count), nesting until the include depth.
+	private void writeIncludes(Writer writer, File directory, State state, int level, long start, long count, int branches) throws IOException
+	{
+		long step = 1;
+		for (int i = level; i < includeDepth; i++)
+			step *= branches;
+
+		for (long s = start; s < start + count; s += step)
+		{
+			long n = Math.min(step, start + count - s);
+			String name = "l" + level + "_" + s + ".txt";
+			writer.write("#include \"" + name + "\"\n");
+			try (Writer child = open(new File(directory, name)))
+			{
+				if (level == includeDepth)
+					writeObjects(child, state, n * objectsPerFile);
+				else
+					writeIncludes(child, directory, state, level + 1, s, n, branches);
+			}
+		}
+	}
+	
+	// Writes the next objects.
+	private void writeObjects(Writer writer, State state, long count) throws IOException
+	{
+		StringBuilder sb = new StringBuilder(256);
+		for (long c = 0; c < count && state.type < types; c++)
+		{
+			int i = state.index;
+			sb.delete(0, sb.length());
+			sb.append("type").append(state.type).append(" \"o").append(i).append('"');
+			int parent = getParent(i);
+			if (parent >= 0)
+				sb.append(" : type").append(state.type).append(" \"o").append(parent).append('"');
+			sb.append(" {\n");
+			
+			sb.append("\tid = ").append(i).append(";\n");
+			if (state.random.nextDouble() < macroDensity)
+				sb.append("\tname = PREFIX + \"o").append(i).append("\";\n");
+			else
+				sb.append("\tname = \"o").append(i).append("\";\n");
+			if (state.random.nextDouble() < macroDensity)
+				sb.append("\tweight = SCALE(").append(i).append(");\n");
+			else
+				sb.append("\tweight = ").append(i).append(".5;\n");
+			if (listSize > 0)
+			{
+				sb.append("\tvalues = [");
+				for (int n = 0; n < listSize; n++)
+				{
+					if (n > 0)
+						sb.append(", ");
+					sb.append(i + n);
+				}
+				sb.append("];\n");
+			}
+			sb.append("}\n");
+			writer.write(sb.toString());
+			
+			if (++state.index == objectsPerType)
+			{
+				state.index = 0;
+				state.type++;
+			}
+		}
+	}
+	
+	// Gets the parent index of an object in its type, or -1 for none.
+	private int getParent(int index)
+	{
+		long treeSize = 0L;
+		long levelSize = 1L;
+		for (int d = 0; d < depth && treeSize < objectsPerType; d++)
+		{
+			treeSize += levelSize;
+			levelSize *= fanout;
+		}
+		int local = (int)(index % treeSize);
+		return local == 0 ? -1 : index - local + (local - 1) / fanout;
+	}
+	
+	private static Writer open(File file) throws IOException
+	{
+		return new BufferedWriter(new OutputStreamWriter(new FileOutputStream(file), Charset.defaultCharset()), 65536);
+	}
+
+	/**
+	 * Generation state.
+	 */
+	private static class State
+	{
+		private Random random;
+		private int type;
+		private int index;
+		
+		private State(Random random)
+		{
+			this.random = random;
+			this.type = 0;
+			this.index = 0;
+		}
+	}
+	
+}
@@ -0,0 +1,63 @@
+/*******************************************************************************
+ * Copyright (c) 2016-2020 Black Rook Software
+ * This program and the accompanying materials are made available under the 
+ * terms of the GNU Lesser Public License v2.1 which accompanies this 
+ * distribution, and is available at 
+ * http://www.gnu.org/licenses/old-licenses/lgpl-2.1.html
+ ******************************************************************************/
+package com.blackrook.archetext;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Measures {@link ArcheTextObject#getField(String)} at the end of an inheritance chain of varying depth,
+ * for a field declared by the object itself and for one declared at the start of the chain.
+ * @author Matthew Tropiano
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class FieldBenchmark
+{
+	@Param({"1", "4", "16", "64"})
+	public int depth;
+	
+	private ArcheTextObject leaf;
+	private String localField;
+	
+	@Setup
+	public void setup() throws IOException
+	{
+		leaf = BenchCorpus.deep(1, depth).read().get("thing", "d0_" + (depth - 1));
+		localField = "f" + (depth - 1);
+	}
+	
+	@Benchmark
+	public ArcheTextValue getLocalField()
+	{
+		return leaf.getField(localField);
+	}
+	
+	@Benchmark
+	public ArcheTextValue getInheritedField()
+	{
+		return leaf.getField("b");
+	}
+	
+}
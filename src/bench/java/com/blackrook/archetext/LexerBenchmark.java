@@ -0,0 +1,75 @@
+/*******************************************************************************
+ * Copyright (c) 2016-2020 Black Rook Software
+ * This program and the accompanying materials are made available under the 
+ * terms of the GNU Lesser Public License v2.1 which accompanies this 
+ * distribution, and is available at 
+ * http://www.gnu.org/licenses/old-licenses/lgpl-2.1.html
+ ******************************************************************************/
+package com.blackrook.archetext;
+
+import java.io.IOException;
+import java.io.StringReader;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import com.blackrook.archetext.struct.Lexer;
+import com.blackrook.archetext.struct.PreprocessorLexer;
+import com.blackrook.archetext.struct.PreprocessorLexer.Includer;
+
+/**
+ * Measures {@link PreprocessorLexer#nextToken()} throughput: each operation lexes a whole corpus, includes and all.
+ * @author Matthew Tropiano
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class LexerBenchmark
+{
+	@Param({"FLAT", "DEEP", "INCLUDES", "EXPRESSIONS", "LISTS"})
+	public BenchCorpus.Shape shape;
+	
+	@Param({"1000"})
+	public int objects;
+	
+	private String text;
+	private Includer includer;
+	
+	@Setup
+	public void setup()
+	{
+		BenchCorpus corpus = BenchCorpus.create(shape, objects);
+		text = corpus.getText();
+		includer = corpus.getIncluder();
+	}
+	
+	@Benchmark
+	public int nextToken(Blackhole blackhole) throws IOException
+	{
+		PreprocessorLexer lexer = new PreprocessorLexer(ArcheTextReader.KERNEL_INSTANCE, BenchCorpus.MAIN, new StringReader(text));
+		lexer.setIncluder(includer);
+		int out = 0;
+		Lexer.Token token;
+		while ((token = lexer.nextToken()) != null)
+		{
+			blackhole.consume(token);
+			out++;
+		}
+		return out;
+	}
+	
+}
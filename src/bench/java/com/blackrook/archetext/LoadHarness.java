@@ -0,0 +1,191 @@
+/*******************************************************************************
+ * Copyright (c) 2016-2020 Black Rook Software
+ * This program and the accompanying materials are made available under the 
+ * terms of the GNU Lesser Public License v2.1 which accompanies this 
+ * distribution, and is available at 
+ * http://www.gnu.org/licenses/old-licenses/lgpl-2.1.html
+ ******************************************************************************/
+package com.blackrook.archetext;
+
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.io.PrintWriter;
+import java.lang.management.GarbageCollectorMXBean;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryPoolMXBean;
+import java.lang.management.MemoryType;
+import java.text.SimpleDateFormat;
+import java.util.Date;
+
+/**
+ * Load test harness: generates corpora of growing size with a {@link CorpusGenerator}, reads each one with
+ * {@link ArcheTextReader}, exports every type with {@link ArcheTextRoot#exportByType(String, Class)}, and reports
+ * wall time, peak heap use, and garbage collections for each size as CSV.
+ * <p>
+ * Usage: <code>LoadHarness [options]</code>
+ * <ul>
+ * <li><code>--dir DIR</code> - the working directory for generated corpora (default: <code>build/loadtest</code>).</li>
+ * <li><code>--min MB</code> - the smallest corpus size in megabytes (default: 1).</li>
+ * <li><code>--max MB</code> - the largest corpus size in megabytes (default: 1024).</li>
+ * <li><code>--step N</code> - the size multiplier from one corpus to the next (default: 4).</li>
+ * <li><code>--types N</code>, <code>--depth N</code>, <code>--fanout N</code>, <code>--per-file N</code>, <code>--include-depth N</code>, 
+ * <code>--macros F</code>, <code>--list N</code>, <code>--seed N</code> - the {@link CorpusGenerator} settings.</li>
+ * <li><code>--out FILE</code> - a CSV file to append results to, with a timestamp, for tracking over time.</li>
+ * </ul>
+ * Sizes that do not fit in the heap stop the run. Give the JVM enough heap (<code>-Xmx</code>) for the largest size.
+ * @author Matthew Tropiano
+ */
+public final class LoadHarness
+{
+	private static final String CSV_HEADER = "bytes,objects,generateMillis,readMillis,exportMillis,peakHeapBytes,gcCount,gcMillis";
+	
+	private LoadHarness() {}
+	
+	public static void main(String[] args) throws IOException
+	{
+		File dir = new File("build/loadtest");
+		long min = 1L;
+		long max = 1024L;
+		int step = 4;
+		File out = null;
+		CorpusGenerator generator = new CorpusGenerator();
+		
+		for (int i = 0; i < args.length; i++)
+		{
+			String arg = args[i];
+			if (i + 1 >= args.length)
+				usage("Expected value after " + arg);
+			String value = args[++i];
+			switch (arg)
+			{
+				case "--dir": dir = new File(value); break;
+				case "--min": min = Long.parseLong(value); break;
+				case "--max": max = Long.parseLong(value); break;
+				case "--step": step = Math.max(2, Integer.parseInt(value)); break;
+				case "--out": out = new File(value); break;
+				case "--types": generator.setTypes(Integer.parseInt(value)); break;
+				case "--depth": generator.setDepth(Integer.parseInt(value)); break;
+				case "--fanout": generator.setFanout(Integer.parseInt(value)); break;
+				case "--per-file": generator.setObjectsPerFile(Integer.parseInt(value)); break;
+				case "--include-depth": generator.setIncludeDepth(Integer.parseInt(value)); break;
+				case "--macros": generator.setMacroDensity(Double.parseDouble(value)); break;
+				case "--list": generator.setListSize(Integer.parseInt(value)); break;
+				case "--seed": generator.setSeed(Long.parseLong(value)); break;
+				default: usage("Unknown option: " + arg);
+			}
+		}
+		
+		// size one object to scale the rest.
+		File sampleDir = new File(dir, "sample");
+		generator.setObjectsPerType(1000);
+		generator.generate(sampleDir);
+		double bytesPerObject = (double)CorpusGenerator.getSize(sampleDir) / generator.getObjectCount();
+		delete(sampleDir);
+		
+		String timestamp = new SimpleDateFormat("yyyy-MM-dd'T'HH:mm:ss").format(new Date());
+		PrintStream console = System.out;
+		console.println(CSV_HEADER);
+		try (PrintWriter csv = out != null ? new PrintWriter(new FileWriter(out, true)) : null)
+		{
+			if (csv != null && out.length() == 0)
+				csv.println("timestamp," + CSV_HEADER);
+			
+			for (long mb = min; mb <= max; mb *= step)
+			{
+				long target = mb * 1024L * 1024L;
+				generator.setObjectsPerType((int)Math.max(1L, Math.min(Integer.MAX_VALUE, (long)(target / bytesPerObject / generator.getTypes()))));
+				
+				String line;
+				try {
+					line = run(generator, new File(dir, mb + "mb"));
+				} catch (OutOfMemoryError e) {
+					console.println("# " + mb + " MB does not fit in the heap - stopping.");
+					break;
+				}
+				console.println(line);
+				if (csv != null)
+				{
+					csv.println(timestamp + "," + line);
+					csv.flush();
+				}
+			}
+		}
+	}
+
+	// Runs one size and returns its CSV line.
+	private static String run(CorpusGenerator generator, File dir) throws IOException
+	{
+		long time = System.nanoTime();
+		File main = generator.generate(dir);
+		long generateNanos = System.nanoTime() - time;
+		long bytes = CorpusGenerator.getSize(dir);
+		
+		try {
+			System.gc();
+			for (MemoryPoolMXBean pool : ManagementFactory.getMemoryPoolMXBeans())
+				pool.resetPeakUsage();
+			long gcCount = getGCCount();
+			long gcMillis = getGCMillis();
+			
+			time = System.nanoTime();
+			ArcheTextRoot root = ArcheTextReader.read(main);
+			long readNanos = System.nanoTime() - time;
+			
+			time = System.nanoTime();
+			long exported = 0L;
+			for (int t = 0; t < generator.getTypes(); t++)
+				exported += root.exportByType("type" + t, LoadObject.class).length;
+			long exportNanos = System.nanoTime() - time;
+			
+			if (exported != generator.getObjectCount())
+				throw new IllegalStateException("Exported " + exported + " objects, expected " + generator.getObjectCount());
+			
+			long peak = 0L;
+			for (MemoryPoolMXBean pool : ManagementFactory.getMemoryPoolMXBeans())
+			{
+				if (pool.getType() == MemoryType.HEAP)
+					peak += pool.getPeakUsage().getUsed();
+			}
+			
+			return bytes + "," + exported + "," + generateNanos / 1000000L + "," + readNanos / 1000000L + "," + exportNanos / 1000000L + "," 
+				+ peak + "," + (getGCCount() - gcCount) + "," + (getGCMillis() - gcMillis);
+		} finally {
+			delete(dir);
+		}
+	}
+	
+	private static long getGCCount()
+	{
+		long out = 0L;
+		for (GarbageCollectorMXBean gc : ManagementFactory.getGarbageCollectorMXBeans())
+			out += Math.max(0L, gc.getCollectionCount());
+		return out;
+	}
+
+	private static long getGCMillis()
+	{
+		long out = 0L;
+		for (GarbageCollectorMXBean gc : ManagementFactory.getGarbageCollectorMXBeans())
+			out += Math.max(0L, gc.getCollectionTime());
+		return out;
+	}
+	
+	private static void delete(File file)
+	{
+		File[] files = file.listFiles();
+		if (files != null) for (File f : files)
+			delete(f);
+		file.delete();
+	}
+	
+	private static void usage(String message)
+	{
+		System.err.println(message);
+		System.err.println("Usage: LoadHarness [--dir DIR] [--min MB] [--max MB] [--step N] [--out FILE] [--types N] [--depth N] [--fanout N]");
+		System.err.println("       [--per-file N] [--include-depth N] [--macros F] [--list N] [--seed N]");
+		System.exit(1);
+	}
+	
+}
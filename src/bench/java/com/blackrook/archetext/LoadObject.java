@@ -0,0 +1,20 @@
+/*******************************************************************************
+ * Copyright (c) 2016-2020 Black Rook Software
+ * This program and the accompanying materials are made available under the 
+ * terms of the GNU Lesser Public License v2.1 which accompanies this 
+ * distribution, and is available at 
+ * http://www.gnu.org/licenses/old-licenses/lgpl-2.1.html
+ ******************************************************************************/
+package com.blackrook.archetext;
+
+/**
+ * Export target for objects made by {@link CorpusGenerator}.
+ * @author Matthew Tropiano
+ */
+public class LoadObject
+{
+	public int id;
+	public String name;
+	public double weight;
+	public int[] values;
+}
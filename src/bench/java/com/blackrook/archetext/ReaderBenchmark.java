@@ -0,0 +1,58 @@
+/*******************************************************************************
+ * Copyright (c) 2016-2020 Black Rook Software
+ * This program and the accompanying materials are made available under the 
+ * terms of the GNU Lesser Public License v2.1 which accompanies this 
+ * distribution, and is available at 
+ * http://www.gnu.org/licenses/old-licenses/lgpl-2.1.html
+ ******************************************************************************/
+package com.blackrook.archetext;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Measures {@link ArcheTextReader#read(String, java.io.InputStream, com.blackrook.archetext.struct.PreprocessorLexer.Includer)}:
+ * each operation reads a whole corpus into a new root.
+ * @author Matthew Tropiano
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ReaderBenchmark
+{
+	@Param({"FLAT", "DEEP", "INCLUDES", "EXPRESSIONS", "LISTS"})
+	public BenchCorpus.Shape shape;
+	
+	@Param({"1000"})
+	public int objects;
+	
+	private BenchCorpus corpus;
+	
+	@Setup
+	public void setup()
+	{
+		corpus = BenchCorpus.create(shape, objects);
+	}
+	
+	@Benchmark
+	public ArcheTextRoot read() throws IOException
+	{
+		return corpus.read();
+	}
+	
+}
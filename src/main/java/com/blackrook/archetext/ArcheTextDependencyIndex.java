@@ -0,0 +1,298 @@
+/*******************************************************************************
+ * Copyright (c) 2016-2020 Black Rook Software
+ * This program and the accompanying materials are made available under the 
+ * terms of the GNU Lesser Public License v2.1 which accompanies this 
+ * distribution, and is available at 
+ * http://www.gnu.org/licenses/old-licenses/lgpl-2.1.html
+ ******************************************************************************/
+package com.blackrook.archetext;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.LinkedList;
+import java.util.Map;
+import java.util.Queue;
+import java.util.Set;
+
+/**
+ * An index of the dependencies between objects and the streams that they were read from.
+ * <p>
+ * If an {@link ArcheTextRoot} has an index attached to it via {@link ArcheTextRoot#setDependencyIndex(ArcheTextDependencyIndex)},
+ * the {@link ArcheTextReader} fills it in as it reads objects into that root. The index keeps the reverse edges
+ * that the objects themselves do not: the children of an object (objects that inherit from it),
+ * the referrers of an object (objects that refer to it in a field via <code>@{...}</code>), the objects
+ * declared per source stream, and the streams that each stream included.
+ * <p>
+ * This is useful for answering invalidation questions (such as "what needs to be recomputed if this object changes?")
+ * without scanning an entire root.
+ * <p>
+ * This class is NOT thread-safe.
+ * @author Matthew Tropiano
+ */
+public class ArcheTextDependencyIndex
+{
+	/** Object to the objects that inherit from it. */
+	private Map<ArcheTextObject, Set<ArcheTextObject>> childMap;
+	/** Object to the objects that reference it. */
+	private Map<ArcheTextObject, Set<ArcheTextObject>> referrerMap;
+	/** Object to the objects that it inherited from. */
+	private Map<ArcheTextObject, Set<ArcheTextObject>> parentMap;
+	/** Object to the objects that it references. */
+	private Map<ArcheTextObject, Set<ArcheTextObject>> referenceMap;
+	/** Object to declaring stream name. */
+	private Map<ArcheTextObject, String> objectStreamMap;
+	/** Stream name to declared objects. */
+	private Map<String, Set<ArcheTextObject>> streamObjectMap;
+	/** Stream name to included stream names. */
+	private Map<String, Set<String>> includeMap;
+	/** Stream name to stream names that included it. */
+	private Map<String, Set<String>> includerMap;
+
+	/**
+	 * Creates a new, empty dependency index.
+	 */
+	public ArcheTextDependencyIndex()
+	{
+		this.childMap = new HashMap<>();
+		this.referrerMap = new HashMap<>();
+		this.parentMap = new HashMap<>();
+		this.referenceMap = new HashMap<>();
+		this.objectStreamMap = new HashMap<>();
+		this.streamObjectMap = new HashMap<>();
+		this.includeMap = new HashMap<>();
+		this.includerMap = new HashMap<>();
+	}
+
+	/**
+	 * Gets the objects that directly inherit from an object.
+	 * @param object the object.
+	 * @return the set of children. Never null.
+	 */
+	public Set<ArcheTextObject> getChildren(ArcheTextObject object)
+	{
+		return view(childMap.get(object));
+	}
+
+	/**
+	 * Gets the objects that directly refer to an object in one of their fields.
+	 * @param object the object.
+	 * @return the set of referring objects. Never null.
+	 */
+	public Set<ArcheTextObject> getReferrers(ArcheTextObject object)
+	{
+		return view(referrerMap.get(object));
+	}
+
+	/**
+	 * Gets every object whose values depend on an object, directly or transitively,
+	 * through inheritance or reference. The provided object is not included.
+	 * @param object the object.
+	 * @return the set of dependent objects, in breadth-first order. Never null.
+	 */
+	public Set<ArcheTextObject> getDependents(ArcheTextObject object)
+	{
+		Set<ArcheTextObject> out = new LinkedHashSet<>();
+		Queue<ArcheTextObject> queue = new LinkedList<>();
+		queue.add(object);
+		while (!queue.isEmpty())
+		{
+			ArcheTextObject next = queue.poll();
+			addDependents(childMap.get(next), object, out, queue);
+			addDependents(referrerMap.get(next), object, out, queue);
+		}
+		return out;
+	}
+
+	/**
+	 * Gets the name of the stream that an object was declared in.
+	 * @param object the object.
+	 * @return the stream name, or null if the object is not indexed.
+	 */
+	public String getStreamName(ArcheTextObject object)
+	{
+		return objectStreamMap.get(object);
+	}
+
+	/**
+	 * Gets the objects declared in a stream.
+	 * @param streamName the stream name.
+	 * @return the set of objects. Never null.
+	 */
+	public Set<ArcheTextObject> getObjectsByStream(String streamName)
+	{
+		return view(streamObjectMap.get(streamName));
+	}
+
+	/**
+	 * Gets the resolved paths of the streams that a stream directly included.
+	 * @param streamName the stream name.
+	 * @return the set of included stream names. Never null.
+	 */
+	public Set<String> getIncludes(String streamName)
+	{
+		return view(includeMap.get(streamName));
+	}
+
+	/**
+	 * Gets the names of the streams that directly included a stream.
+	 * @param streamName the (resolved) stream name.
+	 * @return the set of including stream names. Never null.
+	 */
+	public Set<String> getIncluders(String streamName)
+	{
+		return view(includerMap.get(streamName));
+	}
+
+	/**
+	 * Gets the stream itself plus every stream that included it, directly or transitively.
+	 * These are the streams that need to be read again if the provided stream changes.
+	 * @param streamName the (resolved) stream name.
+	 * @return the set of affected stream names, in breadth-first order. Never null.
+	 */
+	public Set<String> getAffectedStreams(String streamName)
+	{
+		Set<String> out = new LinkedHashSet<>();
+		Queue<String> queue = new LinkedList<>();
+		out.add(streamName);
+		queue.add(streamName);
+		while (!queue.isEmpty())
+		{
+			Set<String> includers = includerMap.get(queue.poll());
+			if (includers != null) for (String s : includers)
+			{
+				if (out.add(s))
+					queue.add(s);
+			}
+		}
+		return out;
+	}
+
+	/**
+	 * Gets every object declared in a stream plus all of their dependents.
+	 * @param streamName the stream name.
+	 * @return the set of affected objects. Never null.
+	 * @see #getDependents(ArcheTextObject)
+	 */
+	public Set<ArcheTextObject> getAffectedObjects(String streamName)
+	{
+		Set<ArcheTextObject> out = new LinkedHashSet<>();
+		Set<ArcheTextObject> declared = streamObjectMap.get(streamName);
+		if (declared != null) for (ArcheTextObject object : declared)
+		{
+			out.add(object);
+			out.addAll(getDependents(object));
+		}
+		return out;
+	}
+
+	/**
+	 * Clears this index.
+	 */
+	public void clear()
+	{
+		childMap.clear();
+		referrerMap.clear();
+		parentMap.clear();
+		referenceMap.clear();
+		objectStreamMap.clear();
+		streamObjectMap.clear();
+		includeMap.clear();
+		includerMap.clear();
+	}
+
+	/**
+	 * Adds an object declaration.
+	 * @param object the object.
+	 * @param streamName the name of the stream that declared it.
+	 * @param parents the object's parents at time of declaration.
+	 */
+	void addObject(ArcheTextObject object, String streamName, Iterable<ArcheTextObject> parents)
+	{
+		if (streamName != null)
+		{
+			objectStreamMap.put(object, streamName);
+			add(streamObjectMap, streamName, object);
+		}
+		if (parents != null) for (ArcheTextObject parent : parents)
+		{
+			add(childMap, parent, object);
+			add(parentMap, object, parent);
+		}
+	}
+
+	/**
+	 * Adds an object reference.
+	 * @param object the object that contains the reference.
+	 * @param referenced the referenced object.
+	 */
+	void addReference(ArcheTextObject object, ArcheTextObject referenced)
+	{
+		add(referrerMap, referenced, object);
+		add(referenceMap, object, referenced);
+	}
+
+	/**
+	 * Adds a stream include.
+	 * @param streamName the name of the stream that contained the include.
+	 * @param includedStreamName the resolved name of the included stream.
+	 */
+	void addInclude(String streamName, String includedStreamName)
+	{
+		add(includeMap, streamName, includedStreamName);
+		add(includerMap, includedStreamName, streamName);
+	}
+
+	/**
+	 * Removes an object from this index.
+	 * Edges from objects that depend on it are kept, since they still refer to it.
+	 * @param object the object to remove.
+	 */
+	void removeObject(ArcheTextObject object)
+	{
+		String streamName = objectStreamMap.remove(object);
+		if (streamName != null)
+			remove(streamObjectMap, streamName, object);
+
+		Set<ArcheTextObject> parents = parentMap.remove(object);
+		if (parents != null) for (ArcheTextObject parent : parents)
+			remove(childMap, parent, object);
+
+		Set<ArcheTextObject> references = referenceMap.remove(object);
+		if (references != null) for (ArcheTextObject referenced : references)
+			remove(referrerMap, referenced, object);
+	}
+
+	private static void addDependents(Set<ArcheTextObject> set, ArcheTextObject start, Set<ArcheTextObject> out, Queue<ArcheTextObject> queue)
+	{
+		if (set != null) for (ArcheTextObject object : set)
+		{
+			if (object != start && out.add(object))
+				queue.add(object);
+		}
+	}
+
+	private static <K, V> void add(Map<K, Set<V>> map, K key, V value)
+	{
+		Set<V> set;
+		if ((set = map.get(key)) == null)
+			map.put(key, set = new LinkedHashSet<>(4));
+		set.add(value);
+	}
+
+	private static <K, V> void remove(Map<K, Set<V>> map, K key, V value)
+	{
+		Set<V> set;
+		if ((set = map.get(key)) == null)
+			return;
+		set.remove(value);
+		if (set.isEmpty())
+			map.remove(key);
+	}
+
+	private static <T> Set<T> view(Set<T> set)
+	{
+		return set != null ? Collections.unmodifiableSet(set) : Collections.<T>emptySet();
+	}
+
+}
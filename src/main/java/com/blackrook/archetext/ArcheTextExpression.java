@@ -0,0 +1,225 @@
+/*******************************************************************************
+ * Copyright (c) 2016-2020 Black Rook Software
+ * This program and the accompanying materials are made available under the 
+ * terms of the GNU Lesser Public License v2.1 which accompanies this 
+ * distribution, and is available at 
+ * http://www.gnu.org/licenses/old-licenses/lgpl-2.1.html
+ ******************************************************************************/
+package com.blackrook.archetext;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import com.blackrook.archetext.ArcheTextValue.Type;
+import com.blackrook.archetext.exception.ArcheTextOperationException;
+
+/**
+ * A compiled field expression, retained so that a field can be evaluated again
+ * without reading its source again.
+ * <p>
+ * Only the parts of an expression that depend on other fields are kept as nodes.
+ * Subtrees made of only literals are folded into a single {@link Literal} when read, and an
+ * expression that has no field references at all is not kept: its value is all there is.
+ * @author Matthew Tropiano
+ */
+abstract class ArcheTextExpression
+{
+	/**
+	 * Unary operators.
+	 */
+	enum UnaryOperator
+	{
+		NOT,
+		NEGATE,
+		BITNOT,
+		ABSOLUTE;
+
+		/**
+		 * Applies this operator to a value.
+		 * @param value the input value.
+		 * @return the resultant value.
+		 */
+		ArcheTextValue apply(ArcheTextValue value)
+		{
+			switch (this)
+			{
+				case NOT:
+					return value.not();
+				case NEGATE:
+					return value.negate();
+				case BITNOT:
+					return value.bitwiseNot();
+				case ABSOLUTE:
+					return value.absolute();
+				default:
+					throw new ArcheTextOperationException("Internal error - bad unary operator.");
+			}
+		}
+	}
+
+	/**
+	 * Evaluates this expression.
+	 * @param context the object that field references are read from.
+	 * @return the resultant value.
+	 * @throws ArcheTextOperationException if a value cannot be calculated or a field does not exist.
+	 */
+	abstract ArcheTextValue evaluate(ArcheTextObject context);
+
+	/**
+	 * Returns an expression, or a literal for the value if the expression is null.
+	 * @param expression the expression, or null for a constant.
+	 * @param value the (constant) value.
+	 * @return an expression node.
+	 */
+	static ArcheTextExpression nodeFor(ArcheTextExpression expression, ArcheTextValue value)
+	{
+		return expression != null ? expression : new Literal(value);
+	}
+
+	/**
+	 * Literal (constant) value.
+	 */
+	static class Literal extends ArcheTextExpression
+	{
+		private ArcheTextValue value;
+
+		Literal(ArcheTextValue value)
+		{
+			this.value = value;
+		}
+
+		@Override
+		ArcheTextValue evaluate(ArcheTextObject context)
+		{
+			return value;
+		}
+	}
+
+	/**
+	 * Reference to another field in the context object.
+	 */
+	static class FieldReference extends ArcheTextExpression
+	{
+		private String name;
+		/** If true, the reference is to the field being assigned, so it skips the context's own value. */
+		private boolean inherited;
+
+		FieldReference(String name, boolean inherited)
+		{
+			this.name = name;
+			this.inherited = inherited;
+		}
+
+		@Override
+		ArcheTextValue evaluate(ArcheTextObject context)
+		{
+			ArcheTextValue out = inherited ? context.getInheritedField(name) : context.getField(name);
+			if (out == null)
+				throw new ArcheTextOperationException("No such field \""+name+"\" in expression.");
+			return out.share();
+		}
+	}
+
+	/**
+	 * Unary operation.
+	 */
+	static class Unary extends ArcheTextExpression
+	{
+		private UnaryOperator operator;
+		private ArcheTextExpression operand;
+
+		Unary(UnaryOperator operator, ArcheTextExpression operand)
+		{
+			this.operator = operator;
+			this.operand = operand;
+		}
+
+		@Override
+		ArcheTextValue evaluate(ArcheTextObject context)
+		{
+			return operator.apply(operand.evaluate(context));
+		}
+	}
+
+	/**
+	 * Binary operation, performed via a {@link Combinator}.
+	 */
+	static class Binary extends ArcheTextExpression
+	{
+		private Combinator combinator;
+		private ArcheTextExpression source;
+		private ArcheTextExpression operand;
+
+		Binary(Combinator combinator, ArcheTextExpression source, ArcheTextExpression operand)
+		{
+			this.combinator = combinator;
+			this.source = source;
+			this.operand = operand;
+		}
+
+		@Override
+		ArcheTextValue evaluate(ArcheTextObject context)
+		{
+			ArcheTextValue sourceValue = source.evaluate(context);
+			return combinator.combine(operand.evaluate(context), sourceValue);
+		}
+	}
+
+	/**
+	 * List or set of expressions.
+	 */
+	static class Collection extends ArcheTextExpression
+	{
+		private boolean set;
+		private ArcheTextExpression[] elements;
+
+		Collection(boolean set, List<ArcheTextExpression> expressions, List<ArcheTextValue> values)
+		{
+			this.set = set;
+			this.elements = new ArcheTextExpression[values.size()];
+			for (int i = 0; i < elements.length; i++)
+				elements[i] = nodeFor(expressions.get(i), values.get(i));
+		}
+
+		@Override
+		ArcheTextValue evaluate(ArcheTextObject context)
+		{
+			if (set)
+			{
+				Set<ArcheTextValue> out = new HashSet<>();
+				for (ArcheTextExpression e : elements)
+					out.add(e.evaluate(context));
+				return new ArcheTextValue(Type.SET, out);
+			}
+			else
+			{
+				List<ArcheTextValue> out = new ArrayList<>(elements.length);
+				for (ArcheTextExpression e : elements)
+					out.add(e.evaluate(context));
+				return new ArcheTextValue(Type.LIST, ArcheTextNumericList.pack(out));
+			}
+		}
+	}
+
+	/**
+	 * Anonymous or prototyped object, with fields that refer to the context object.
+	 */
+	static class ObjectValue extends ArcheTextExpression
+	{
+		private ArcheTextObject template;
+
+		ObjectValue(ArcheTextObject template)
+		{
+			this.template = template;
+		}
+
+		@Override
+		ArcheTextValue evaluate(ArcheTextObject context)
+		{
+			return new ArcheTextValue(Type.OBJECT, template.evaluateCopy(context));
+		}
+	}
+
+}
@@ -0,0 +1,308 @@
+/*******************************************************************************
+ * Copyright (c) 2016-2020 Black Rook Software
+ * This program and the accompanying materials are made available under the 
+ * terms of the GNU Lesser Public License v2.1 which accompanies this 
+ * distribution, and is available at 
+ * http://www.gnu.org/licenses/old-licenses/lgpl-2.1.html
+ ******************************************************************************/
+package com.blackrook.archetext;
+
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+
+/**
+ * The local fields of an {@link ArcheTextObject}, kept in parallel arrays of names (and their hashes), 
+ * combinators, values, and expressions, in the order that they were first set.
+ * <p>
+ * Most objects have only a few fields, so a map with an entry object per field costs more than the fields do.
+ * Tables of up to {@link #LINEAR_LIMIT} fields are searched in order. Larger tables keep an open-addressing
+ * index (linear probing) of positions by name hash. Expressions are only stored if a field has one.
+ * The reader calls {@link #trim()} once an object is complete, so that the arrays are exactly the field count.
+ * <p>
+ * This class is NOT thread-safe.
+ * @author Matthew Tropiano
+ */
+final class ArcheTextFieldTable
+{
+	/** The largest table that is searched in order, without an index. */
+	static final int LINEAR_LIMIT = 16;
+
+	/** Combinators by ordinal. */
+	private static final Combinator[] COMBINATORS = Combinator.values();
+	/** Starting capacity for tables with no size hint. */
+	private static final int DEFAULT_CAPACITY = 4;
+
+	/** Field names. */
+	private String[] names;
+	/** Field name hashes, compared before names. */
+	private int[] hashes;
+	/** Field combinator ordinals. */
+	private byte[] combinators;
+	/** Field values. */
+	private ArcheTextValue[] values;
+	/** Field expressions, or null if no field has one. */
+	private ArcheTextExpression[] expressions;
+	/** Name hash to position plus one (0 is empty), or null if this table is searched in order. */
+	private int[] index;
+	/** Amount of fields. */
+	private int size;
+
+	/**
+	 * Creates a new table.
+	 */
+	ArcheTextFieldTable()
+	{
+		this(DEFAULT_CAPACITY);
+	}
+
+	/**
+	 * Creates a new table.
+	 * @param capacity the starting capacity.
+	 */
+	ArcheTextFieldTable(int capacity)
+	{
+		capacity = Math.max(capacity, 1);
+		this.names = new String[capacity];
+		this.hashes = new int[capacity];
+		this.combinators = new byte[capacity];
+		this.values = new ArcheTextValue[capacity];
+		this.expressions = null;
+		this.index = null;
+		this.size = 0;
+	}
+
+	/**
+	 * @return the amount of fields.
+	 */
+	int size()
+	{
+		return size;
+	}
+
+	/**
+	 * @return true if there are no fields, false otherwise.
+	 */
+	boolean isEmpty()
+	{
+		return size == 0;
+	}
+
+	/**
+	 * Gets the position of a field.
+	 * @param name the field name.
+	 * @return the position, or -1 if there is no such field.
+	 */
+	int indexOf(String name)
+	{
+		int h = name.hashCode();
+		if (index == null)
+		{
+			for (int i = 0; i < size; i++)
+				if (hashes[i] == h && names[i].equals(name))
+					return i;
+			return -1;
+		}
+
+		int mask = index.length - 1;
+		for (int slot = spread(h) & mask; index[slot] != 0; slot = (slot + 1) & mask)
+		{
+			int i = index[slot] - 1;
+			if (hashes[i] == h && names[i].equals(name))
+				return i;
+		}
+		return -1;
+	}
+
+	/**
+	 * @param i the field position.
+	 * @return the name of the field.
+	 */
+	String getName(int i)
+	{
+		return names[i];
+	}
+
+	/**
+	 * @param i the field position.
+	 * @return the combinator of the field.
+	 */
+	Combinator getCombinator(int i)
+	{
+		return COMBINATORS[combinators[i]];
+	}
+
+	/**
+	 * @param i the field position.
+	 * @return the value of the field.
+	 */
+	ArcheTextValue getValue(int i)
+	{
+		return values[i];
+	}
+
+	/**
+	 * @param i the field position.
+	 * @return the expression that the field's value came from, or null if none.
+	 */
+	ArcheTextExpression getExpression(int i)
+	{
+		return expressions != null ? expressions[i] : null;
+	}
+
+	/**
+	 * @return true if any field keeps an expression.
+	 */
+	boolean hasExpressions()
+	{
+		if (expressions != null) for (int i = 0; i < size; i++)
+			if (expressions[i] != null)
+				return true;
+		return false;
+	}
+
+	/**
+	 * Sets a field. A field that is already set keeps its position.
+	 * @param name the field name.
+	 * @param combinator the field's combinator.
+	 * @param value the field's value.
+	 * @param expression the expression that the value came from, or null if none.
+	 */
+	void put(String name, Combinator combinator, ArcheTextValue value, ArcheTextExpression expression)
+	{
+		int i = indexOf(name);
+		if (i < 0)
+		{
+			if (size == names.length)
+				resize(size + (size >> 1) + 1);
+			i = size++;
+			names[i] = name;
+			hashes[i] = name.hashCode();
+			if (index != null)
+				addToIndex(i);
+			else if (size > LINEAR_LIMIT)
+				rebuildIndex();
+		}
+
+		combinators[i] = (byte)combinator.ordinal();
+		values[i] = value;
+		if (expression != null && expressions == null)
+			expressions = new ArcheTextExpression[names.length];
+		if (expressions != null)
+			expressions[i] = expression;
+	}
+
+	/**
+	 * Removes a field. The fields after it move up one position.
+	 * @param name the field name.
+	 * @return true if removed, false if there was no such field.
+	 */
+	boolean remove(String name)
+	{
+		int i = indexOf(name);
+		if (i < 0)
+			return false;
+
+		int after = size - i - 1;
+		System.arraycopy(names, i + 1, names, i, after);
+		System.arraycopy(hashes, i + 1, hashes, i, after);
+		System.arraycopy(combinators, i + 1, combinators, i, after);
+		System.arraycopy(values, i + 1, values, i, after);
+		if (expressions != null)
+			System.arraycopy(expressions, i + 1, expressions, i, after);
+		size--;
+		names[size] = null;
+		values[size] = null;
+		if (expressions != null)
+			expressions[size] = null;
+		rebuildIndex();
+		return true;
+	}
+
+	/**
+	 * Shrinks the arrays to the field count, and drops the expression array if no field has an expression.
+	 */
+	void trim()
+	{
+		if (expressions != null && !hasExpressions())
+			expressions = null;
+		if (size > 0 && size < names.length)
+			resize(size);
+	}
+
+	/**
+	 * @return an iterator of field names, in position order. It does not support removal.
+	 */
+	Iterator<String> nameIterator()
+	{
+		return new Iterator<String>()
+		{
+			private int next = 0;
+
+			@Override
+			public boolean hasNext()
+			{
+				return next < size;
+			}
+
+			@Override
+			public String next()
+			{
+				if (next >= size)
+					throw new NoSuchElementException();
+				return names[next++];
+			}
+		};
+	}
+
+	// resizes the arrays.
+	private void resize(int capacity)
+	{
+		names = Arrays.copyOf(names, capacity);
+		hashes = Arrays.copyOf(hashes, capacity);
+		combinators = Arrays.copyOf(combinators, capacity);
+		values = Arrays.copyOf(values, capacity);
+		if (expressions != null)
+			expressions = Arrays.copyOf(expressions, capacity);
+	}
+
+	// rebuilds the index from the names, or drops it if this table is small enough.
+	private void rebuildIndex()
+	{
+		if (size <= LINEAR_LIMIT)
+		{
+			index = null;
+			return;
+		}
+
+		int capacity = Integer.highestOneBit(size * 2 - 1) << 1;
+		if (index == null || index.length != capacity)
+			index = new int[capacity];
+		else
+			Arrays.fill(index, 0);
+		for (int i = 0; i < size; i++)
+			addToIndex(i);
+	}
+
+	// adds a position to the index, growing it if it gets over half full.
+	private void addToIndex(int i)
+	{
+		if (size * 2 > index.length)
+		{
+			rebuildIndex();
+			return;
+		}
+		int mask = index.length - 1;
+		int slot = spread(hashes[i]) & mask;
+		while (index[slot] != 0)
+			slot = (slot + 1) & mask;
+		index[slot] = i + 1;
+	}
+
+	// spreads a hash's high bits into its low bits.
+	private static int spread(int h)
+	{
+		return h ^ (h >>> 16);
+	}
+
+}
@@ -0,0 +1,59 @@
+/*******************************************************************************
+ * Copyright (c) 2016-2020 Black Rook Software
+ * This program and the accompanying materials are made available under the 
+ * terms of the GNU Lesser Public License v2.1 which accompanies this 
+ * distribution, and is available at 
+ * http://www.gnu.org/licenses/old-licenses/lgpl-2.1.html
+ ******************************************************************************/
+package com.blackrook.archetext;
+
+/**
+ * Handler interface for streaming reads via {@link ArcheTextReader#stream(String, java.io.Reader, com.blackrook.archetext.struct.PreprocessorLexer.Includer, ArcheTextHandler, int, Resolver)}.
+ * <p>
+ * Events are called in the order that the objects are read: one {@link #startObject(String, String, Iterable)},
+ * then one {@link #field(String, Combinator, ArcheTextValue)} per field assignment in the object's body,
+ * in declaration order, then one {@link #endObject(ArcheTextObject)}.
+ * Fields of anonymous objects declared inside of values are not reported separately - they are part of the field's value.
+ * @author Matthew Tropiano
+ */
+public interface ArcheTextHandler
+{
+	/**
+	 * Resolver interface for objects that are not in the streaming window anymore
+	 * (or were never read by the stream to begin with).
+	 */
+	public interface Resolver
+	{
+		/**
+		 * Resolves an object by type and name.
+		 * @param type the object type.
+		 * @param name the object name. Can be null for the default object of a type.
+		 * @return the corresponding object, or null if not found.
+		 */
+		ArcheTextObject resolve(String type, String name);
+	}
+
+	/**
+	 * Called at the start of an object, after its parents are resolved.
+	 * @param type the object type.
+	 * @param name the object name. Can be null for the default object of a type.
+	 * @param parents the object's parents, in order of precedence. This is a copy that cannot be modified, and can be kept.
+	 */
+	void startObject(String type, String name, Iterable<ArcheTextObject> parents);
+
+	/**
+	 * Called for each field assignment in an object, after the value is evaluated.
+	 * @param name the field name.
+	 * @param combinator the field's combinator.
+	 * @param value the field's evaluated value.
+	 */
+	void field(String name, Combinator combinator, ArcheTextValue value);
+
+	/**
+	 * Called at the end of an object.
+	 * If the object declared its parents with <code>&lt;-</code>, it is already flattened.
+	 * @param object the completed object. It is only retained by the reader while it is in the streaming window.
+	 */
+	void endObject(ArcheTextObject object);
+
+}
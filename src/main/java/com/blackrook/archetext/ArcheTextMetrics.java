@@ -0,0 +1,343 @@
+/*******************************************************************************
+ * Copyright (c) 2016-2020 Black Rook Software
+ * This program and the accompanying materials are made available under the 
+ * terms of the GNU Lesser Public License v2.1 which accompanies this 
+ * distribution, and is available at 
+ * http://www.gnu.org/licenses/old-licenses/lgpl-2.1.html
+ ******************************************************************************/
+package com.blackrook.archetext;
+
+import java.lang.management.ManagementFactory;
+import java.util.Collections;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+/**
+ * Counts and timings of the work that {@link ArcheTextReader} does.
+ * <p>
+ * If an {@link ArcheTextRoot} has metrics attached to it via {@link ArcheTextRoot#setMetrics(ArcheTextMetrics)},
+ * the reader adds to them as it reads objects into that root. Roots without metrics are read without instrumentation.
+ * Values accumulate across reads until {@link #reset()} is called.
+ * <p>
+ * Counts are kept in total and per stream. A count is added to the stream that was being read at the time, 
+ * so the counts of included streams are not part of their includer's counts. Stream times do include the time spent 
+ * in the streams that they include.
+ * <p>
+ * Metrics can be published as an MXBean on the platform MBean server via {@link #register(String)}.
+ * This class is thread-safe.
+ * @author Matthew Tropiano
+ */
+public class ArcheTextMetrics implements ArcheTextMetricsMXBean
+{
+	/** Domain of the JMX object names of registered metrics. */
+	public static final String JMX_DOMAIN = "com.blackrook.archetext";
+	
+	/**
+	 * Metrics for a single stream.
+	 */
+	public static class StreamMetrics
+	{
+		/** The stream name. */
+		private String streamName;
+		
+		LongAdder reads;
+		LongAdder nanos;
+		LongAdder characters;
+		LongAdder tokens;
+		LongAdder directives;
+		LongAdder includes;
+		LongAdder macroExpansions;
+		LongAdder objects;
+		LongAdder expressions;
+		LongAdder parentLookups;
+		
+		private StreamMetrics(String streamName)
+		{
+			this.streamName = streamName;
+			this.reads = new LongAdder();
+			this.nanos = new LongAdder();
+			this.characters = new LongAdder();
+			this.tokens = new LongAdder();
+			this.directives = new LongAdder();
+			this.includes = new LongAdder();
+			this.macroExpansions = new LongAdder();
+			this.objects = new LongAdder();
+			this.expressions = new LongAdder();
+			this.parentLookups = new LongAdder();
+		}
+
+		/**
+		 * @return the stream name.
+		 */
+		public String getStreamName()
+		{
+			return streamName;
+		}
+
+		/**
+		 * @return the amount of times that this stream was read to its end.
+		 */
+		public long getReadCount()
+		{
+			return reads.sum();
+		}
+
+		/**
+		 * @return the total time spent reading this stream (and what it included), in nanoseconds.
+		 */
+		public long getNanos()
+		{
+			return nanos.sum();
+		}
+
+		/**
+		 * @return the amount of characters read from this stream.
+		 */
+		public long getCharacterCount()
+		{
+			return characters.sum();
+		}
+
+		/**
+		 * @return the amount of tokens read from this stream.
+		 */
+		public long getTokenCount()
+		{
+			return tokens.sum();
+		}
+
+		/**
+		 * @return the amount of directives processed in this stream.
+		 */
+		public long getDirectiveCount()
+		{
+			return directives.sum();
+		}
+
+		/**
+		 * @return the amount of streams included by this stream.
+		 */
+		public long getIncludeCount()
+		{
+			return includes.sum();
+		}
+
+		/**
+		 * @return the amount of macro expansions in this stream.
+		 */
+		public long getMacroExpansionCount()
+		{
+			return macroExpansions.sum();
+		}
+
+		/**
+		 * @return the amount of objects read from this stream.
+		 */
+		public long getObjectCount()
+		{
+			return objects.sum();
+		}
+
+		/**
+		 * @return the amount of value expressions evaluated in this stream.
+		 */
+		public long getExpressionCount()
+		{
+			return expressions.sum();
+		}
+
+		/**
+		 * @return the amount of parent object lookups in this stream.
+		 */
+		public long getParentLookupCount()
+		{
+			return parentLookups.sum();
+		}
+		
+		private void reset()
+		{
+			reads.reset();
+			nanos.reset();
+			characters.reset();
+			tokens.reset();
+			directives.reset();
+			includes.reset();
+			macroExpansions.reset();
+			objects.reset();
+			expressions.reset();
+			parentLookups.reset();
+		}
+		
+		@Override
+		public String toString()
+		{
+			return streamName + ": " + getReadCount() + " reads, " + getNanos() + " ns, " + getCharacterCount() + " characters, "
+				+ getTokenCount() + " tokens, " + getDirectiveCount() + " directives, " + getIncludeCount() + " includes, " 
+				+ getMacroExpansionCount() + " macro expansions, " + getObjectCount() + " objects, " + getExpressionCount() + " expressions, " 
+				+ getParentLookupCount() + " parent lookups";
+		}
+	}
+	
+	/** Totals. */
+	private StreamMetrics total;
+	/** Stream name to stream metrics. */
+	private Map<String, StreamMetrics> streamMap;
+	/** Registered JMX name, if any. */
+	private ObjectName objectName;
+	
+	/**
+	 * Creates a new set of metrics.
+	 */
+	public ArcheTextMetrics()
+	{
+		this.total = new StreamMetrics(null);
+		this.streamMap = new ConcurrentHashMap<>();
+		this.objectName = null;
+	}
+	
+	@Override
+	public long getReadCount()
+	{
+		return total.getReadCount();
+	}
+
+	@Override
+	public long getReadNanos()
+	{
+		return total.getNanos();
+	}
+
+	@Override
+	public long getCharacterCount()
+	{
+		return total.getCharacterCount();
+	}
+
+	@Override
+	public long getTokenCount()
+	{
+		return total.getTokenCount();
+	}
+
+	@Override
+	public long getDirectiveCount()
+	{
+		return total.getDirectiveCount();
+	}
+
+	@Override
+	public long getIncludeCount()
+	{
+		return total.getIncludeCount();
+	}
+
+	@Override
+	public long getMacroExpansionCount()
+	{
+		return total.getMacroExpansionCount();
+	}
+
+	@Override
+	public long getObjectCount()
+	{
+		return total.getObjectCount();
+	}
+
+	@Override
+	public long getExpressionCount()
+	{
+		return total.getExpressionCount();
+	}
+
+	@Override
+	public long getParentLookupCount()
+	{
+		return total.getParentLookupCount();
+	}
+
+	/**
+	 * Gets the metrics for a single stream.
+	 * @param streamName the stream name.
+	 * @return the stream's metrics, or null if the stream was not read.
+	 */
+	public StreamMetrics getStream(String streamName)
+	{
+		return streamMap.get(streamName);
+	}
+	
+	@Override
+	public Map<String, StreamMetrics> getStreams()
+	{
+		return Collections.unmodifiableMap(new TreeMap<>(streamMap));
+	}
+	
+	@Override
+	public void reset()
+	{
+		total.reset();
+		streamMap.clear();
+	}
+	
+	/**
+	 * Registers these metrics as an MXBean on the platform MBean server,
+	 * under <code>com.blackrook.archetext:type=ArcheTextMetrics,name=<i>name</i></code>.
+	 * @param name the name to register under.
+	 * @return the object name used.
+	 * @throws JMException if the metrics could not be registered.
+	 * @throws IllegalStateException if these metrics are already registered.
+	 */
+	public synchronized ObjectName register(String name) throws JMException
+	{
+		if (objectName != null)
+			throw new IllegalStateException("Metrics are already registered as " + objectName);
+		ObjectName out = new ObjectName(JMX_DOMAIN + ":type=ArcheTextMetrics,name=" + ObjectName.quote(name));
+		ManagementFactory.getPlatformMBeanServer().registerMBean(this, out);
+		objectName = out;
+		return out;
+	}
+	
+	/**
+	 * Unregisters these metrics from the platform MBean server, if registered.
+	 * @throws JMException if the metrics could not be unregistered.
+	 */
+	public synchronized void unregister() throws JMException
+	{
+		if (objectName == null)
+			return;
+		MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+		if (server.isRegistered(objectName))
+			server.unregisterMBean(objectName);
+		objectName = null;
+	}
+	
+	/**
+	 * @return the totals.
+	 */
+	StreamMetrics getTotal()
+	{
+		return total;
+	}
+	
+	/**
+	 * Gets the metrics for a stream, creating them if they do not exist.
+	 * @param streamName the stream name.
+	 * @return the stream's metrics.
+	 */
+	StreamMetrics getOrCreateStream(String streamName)
+	{
+		return streamMap.computeIfAbsent(streamName, StreamMetrics::new);
+	}
+	
+	@Override
+	public String toString()
+	{
+		return "ArcheTextMetrics " + total.toString().substring("null: ".length());
+	}
+	
+}
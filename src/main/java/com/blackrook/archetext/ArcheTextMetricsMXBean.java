@@ -0,0 +1,78 @@
+/*******************************************************************************
+ * Copyright (c) 2016-2020 Black Rook Software
+ * This program and the accompanying materials are made available under the 
+ * terms of the GNU Lesser Public License v2.1 which accompanies this 
+ * distribution, and is available at 
+ * http://www.gnu.org/licenses/old-licenses/lgpl-2.1.html
+ ******************************************************************************/
+package com.blackrook.archetext;
+
+import java.util.Map;
+
+/**
+ * Management interface for {@link ArcheTextMetrics}.
+ * @author Matthew Tropiano
+ */
+public interface ArcheTextMetricsMXBean
+{
+	/**
+	 * @return the amount of completed reads.
+	 */
+	long getReadCount();
+
+	/**
+	 * @return the total time spent in completed reads, in nanoseconds.
+	 */
+	long getReadNanos();
+
+	/**
+	 * @return the amount of characters read from all streams.
+	 */
+	long getCharacterCount();
+
+	/**
+	 * @return the amount of tokens produced by the lexer, including tokens from macro expansions.
+	 */
+	long getTokenCount();
+
+	/**
+	 * @return the amount of preprocessor directives processed.
+	 */
+	long getDirectiveCount();
+
+	/**
+	 * @return the amount of included streams opened.
+	 */
+	long getIncludeCount();
+
+	/**
+	 * @return the amount of macro expansions.
+	 */
+	long getMacroExpansionCount();
+
+	/**
+	 * @return the amount of objects read.
+	 */
+	long getObjectCount();
+
+	/**
+	 * @return the amount of value expressions evaluated.
+	 */
+	long getExpressionCount();
+
+	/**
+	 * @return the amount of parent object lookups.
+	 */
+	long getParentLookupCount();
+
+	/**
+	 * @return the metrics of each stream read, by stream name.
+	 */
+	Map<String, ArcheTextMetrics.StreamMetrics> getStreams();
+
+	/**
+	 * Resets all metrics to zero and forgets all streams.
+	 */
+	void reset();
+
+}
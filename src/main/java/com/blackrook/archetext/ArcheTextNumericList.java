@@ -0,0 +1,389 @@
+/*******************************************************************************
+ * Copyright (c) 2016-2020 Black Rook Software
+ * This program and the accompanying materials are made available under the 
+ * terms of the GNU Lesser Public License v2.1 which accompanies this 
+ * distribution, and is available at 
+ * http://www.gnu.org/licenses/old-licenses/lgpl-2.1.html
+ ******************************************************************************/
+package com.blackrook.archetext;
+
+import java.util.AbstractList;
+import java.util.List;
+import java.util.RandomAccess;
+
+import com.blackrook.archetext.ArcheTextValue.Type;
+import com.blackrook.archetext.exception.ArcheTextOperationException;
+
+/**
+ * A list value's list that holds only integers or only floats, packed into a primitive array.
+ * <p>
+ * Large numeric lists (curves, lookup tables) take far less memory this way, and element-wise
+ * operations on them are simple loops over the arrays. Elements are made into {@link ArcheTextValue}s
+ * as they are read. Like all other list values' lists, these are never changed after they are created.
+ * @author Matthew Tropiano
+ */
+final class ArcheTextNumericList extends AbstractList<ArcheTextValue> implements RandomAccess
+{
+	/** The smallest list that {@link #pack(List)} packs. */
+	static final int PACK_THRESHOLD = 16;
+
+	/** Element type, either {@link Type#INTEGER} or {@link Type#FLOAT}. */
+	private Type type;
+	/** Integer elements, if integer typed. */
+	private long[] longs;
+	/** Float elements, if float typed. */
+	private double[] doubles;
+
+	/**
+	 * Creates a packed list of integers. The array is not copied.
+	 * @param longs the elements.
+	 */
+	ArcheTextNumericList(long[] longs)
+	{
+		this.type = Type.INTEGER;
+		this.longs = longs;
+		this.doubles = null;
+	}
+
+	/**
+	 * Creates a packed list of floats. The array is not copied.
+	 * @param doubles the elements.
+	 */
+	ArcheTextNumericList(double[] doubles)
+	{
+		this.type = Type.FLOAT;
+		this.longs = null;
+		this.doubles = doubles;
+	}
+
+	/**
+	 * Packs a list, if it is at least {@link #PACK_THRESHOLD} long and its values are all integers or all floats.
+	 * @param list the list to pack.
+	 * @return a packed list, or the same list if it cannot be packed.
+	 */
+	static List<ArcheTextValue> pack(List<ArcheTextValue> list)
+	{
+		if (list instanceof ArcheTextNumericList || list.size() < PACK_THRESHOLD)
+			return list;
+
+		Type elementType = list.get(0).type;
+		if (elementType != Type.INTEGER && elementType != Type.FLOAT)
+			return list;
+		for (ArcheTextValue value : list)
+			if (value.type != elementType)
+				return list;
+
+		int size = list.size();
+		if (elementType == Type.INTEGER)
+		{
+			long[] out = new long[size];
+			for (int i = 0; i < size; i++)
+				out[i] = list.get(i).getLong();
+			return new ArcheTextNumericList(out);
+		}
+		else
+		{
+			double[] out = new double[size];
+			for (int i = 0; i < size; i++)
+				out[i] = list.get(i).getDouble();
+			return new ArcheTextNumericList(out);
+		}
+	}
+
+	/**
+	 * Concatenates two lists if they are both packed lists of the same type.
+	 * @param first the first list.
+	 * @param second the second list.
+	 * @return the concatenated, packed list, or null if the lists cannot be concatenated this way.
+	 */
+	static List<ArcheTextValue> concat(List<ArcheTextValue> first, List<ArcheTextValue> second)
+	{
+		if (!(first instanceof ArcheTextNumericList) || !(second instanceof ArcheTextNumericList))
+			return null;
+
+		ArcheTextNumericList a = (ArcheTextNumericList)first;
+		ArcheTextNumericList b = (ArcheTextNumericList)second;
+		if (a.type != b.type)
+			return null;
+
+		if (a.type == Type.INTEGER)
+		{
+			long[] out = new long[a.longs.length + b.longs.length];
+			System.arraycopy(a.longs, 0, out, 0, a.longs.length);
+			System.arraycopy(b.longs, 0, out, a.longs.length, b.longs.length);
+			return new ArcheTextNumericList(out);
+		}
+		else
+		{
+			double[] out = new double[a.doubles.length + b.doubles.length];
+			System.arraycopy(a.doubles, 0, out, 0, a.doubles.length);
+			System.arraycopy(b.doubles, 0, out, a.doubles.length, b.doubles.length);
+			return new ArcheTextNumericList(out);
+		}
+	}
+
+	/**
+	 * @return the element type, either {@link Type#INTEGER} or {@link Type#FLOAT}.
+	 */
+	Type getElementType()
+	{
+		return type;
+	}
+
+	@Override
+	public ArcheTextValue get(int index)
+	{
+		if (type == Type.INTEGER)
+			return new ArcheTextValue(Type.INTEGER, longs[index]);
+		else
+			return new ArcheTextValue(Type.FLOAT, doubles[index]);
+	}
+
+	@Override
+	public int size()
+	{
+		return type == Type.INTEGER ? longs.length : doubles.length;
+	}
+
+	@Override
+	public int hashCode()
+	{
+		// Same as the List hash of the elements, without creating them.
+		int typeHash = type.hashCode();
+		int out = 1;
+		if (type == Type.INTEGER) for (long l : longs)
+			out = 31 * out + (typeHash ^ Long.hashCode(l));
+		else for (double d : doubles)
+			out = 31 * out + (typeHash ^ Double.hashCode(d));
+		return out;
+	}
+
+	/**
+	 * Converts this list to a primitive array, if the component type is a primitive number type.
+	 * Elements are converted with a primitive cast, the same as a single value conversion.
+	 * @param componentType the array component type.
+	 * @return a new array, or null if the component type is not a primitive number type.
+	 */
+	Object toArray(Class<?> componentType)
+	{
+		int size = size();
+		if (componentType == Long.TYPE)
+		{
+			if (type == Type.INTEGER)
+				return longs.clone();
+			long[] out = new long[size];
+			for (int i = 0; i < size; i++)
+				out[i] = (long)doubles[i];
+			return out;
+		}
+		else if (componentType == Double.TYPE)
+		{
+			if (type == Type.FLOAT)
+				return doubles.clone();
+			double[] out = new double[size];
+			for (int i = 0; i < size; i++)
+				out[i] = (double)longs[i];
+			return out;
+		}
+		else if (componentType == Integer.TYPE)
+		{
+			int[] out = new int[size];
+			if (type == Type.INTEGER) for (int i = 0; i < size; i++)
+				out[i] = (int)longs[i];
+			else for (int i = 0; i < size; i++)
+				out[i] = (int)doubles[i];
+			return out;
+		}
+		else if (componentType == Float.TYPE)
+		{
+			float[] out = new float[size];
+			if (type == Type.INTEGER) for (int i = 0; i < size; i++)
+				out[i] = (float)longs[i];
+			else for (int i = 0; i < size; i++)
+				out[i] = (float)doubles[i];
+			return out;
+		}
+		else if (componentType == Short.TYPE)
+		{
+			short[] out = new short[size];
+			if (type == Type.INTEGER) for (int i = 0; i < size; i++)
+				out[i] = (short)longs[i];
+			else for (int i = 0; i < size; i++)
+				out[i] = (short)doubles[i];
+			return out;
+		}
+		else if (componentType == Byte.TYPE)
+		{
+			byte[] out = new byte[size];
+			if (type == Type.INTEGER) for (int i = 0; i < size; i++)
+				out[i] = (byte)longs[i];
+			else for (int i = 0; i < size; i++)
+				out[i] = (byte)doubles[i];
+			return out;
+		}
+		return null;
+	}
+
+	/**
+	 * Combines each element of this list with a single boolean, integer, or float operand,
+	 * or with the matching element of another packed list of the same length.
+	 * The element results are the same as combining each element on its own.
+	 * @param combinator the combinator to use. Only {@link Combinator#MULTIPLY}, {@link Combinator#DIVISION},
+	 * 		{@link Combinator#MODULO}, and {@link Combinator#POWER} are applied here.
+	 * @param operand the operand value.
+	 * @return the resultant value, or null if the combinator or operand is not handled here.
+	 * @throws ArcheTextOperationException on a divide by zero.
+	 */
+	ArcheTextValue combine(Combinator combinator, ArcheTextValue operand)
+	{
+		ArcheTextNumericList operands = null;
+		Type operandType;
+		switch (operand.type)
+		{
+			case LIST:
+				if (!(operand.value instanceof ArcheTextNumericList))
+					return null;
+				operands = (ArcheTextNumericList)operand.value;
+				operandType = operands.type;
+				break;
+			case BOOLEAN:
+			case INTEGER:
+				operandType = Type.INTEGER;
+				break;
+			case FLOAT:
+				operandType = Type.FLOAT;
+				break;
+			default:
+				return null;
+		}
+
+		if (type == Type.INTEGER && operandType == Type.INTEGER)
+		{
+			long scalar = operands == null ? (operand.type == Type.BOOLEAN ? (operand.getBoolean() ? 1L : 0L) : operand.getLong()) : 0L;
+			long[] out = combine(combinator, longs, operands != null ? operands.longs : null, scalar);
+			return out != null ? new ArcheTextValue(Type.LIST, new ArcheTextNumericList(out)) : null;
+		}
+		else
+		{
+			double scalar = operands == null ? (operandType == Type.INTEGER ? (operand.type == Type.BOOLEAN ? (operand.getBoolean() ? 1.0 : 0.0) : (double)operand.getLong()) : operand.getDouble()) : 0.0;
+			double[] out = combine(combinator, toDoubles(), operands != null ? operands.toDoubles() : null, scalar);
+			return out != null ? new ArcheTextValue(Type.LIST, new ArcheTextNumericList(out)) : null;
+		}
+	}
+
+	// Gets the elements as floats.
+	private double[] toDoubles()
+	{
+		if (type == Type.FLOAT)
+			return doubles;
+		double[] out = new double[longs.length];
+		for (int i = 0; i < out.length; i++)
+			out[i] = (double)longs[i];
+		return out;
+	}
+
+	// Combines integer elements with another array or a scalar, if the array is null.
+	// These are kept as plain loops so that they can be vectorized by the compiler.
+	private static long[] combine(Combinator combinator, long[] a, long[] b, long scalar)
+	{
+		long[] out = new long[a.length];
+		switch (combinator)
+		{
+			case MULTIPLY:
+				if (b != null) for (int i = 0; i < out.length; i++)
+					out[i] = a[i] * b[i];
+				else for (int i = 0; i < out.length; i++)
+					out[i] = a[i] * scalar;
+				return out;
+			case DIVISION:
+				checkDivisor(b, scalar);
+				if (b != null) for (int i = 0; i < out.length; i++)
+					out[i] = a[i] / b[i];
+				else for (int i = 0; i < out.length; i++)
+					out[i] = a[i] / scalar;
+				return out;
+			case MODULO:
+				checkDivisor(b, scalar);
+				if (b != null) for (int i = 0; i < out.length; i++)
+					out[i] = a[i] % b[i];
+				else for (int i = 0; i < out.length; i++)
+					out[i] = a[i] % scalar;
+				return out;
+			case POWER:
+				if (b != null) for (int i = 0; i < out.length; i++)
+					out[i] = (long)Math.pow(a[i], b[i]);
+				else for (int i = 0; i < out.length; i++)
+					out[i] = (long)Math.pow(a[i], scalar);
+				return out;
+			default:
+				return null;
+		}
+	}
+
+	// Combines float elements with another array or a scalar, if the array is null.
+	// These are kept as plain loops so that they can be vectorized by the compiler.
+	private static double[] combine(Combinator combinator, double[] a, double[] b, double scalar)
+	{
+		double[] out = new double[a.length];
+		switch (combinator)
+		{
+			case MULTIPLY:
+				if (b != null) for (int i = 0; i < out.length; i++)
+					out[i] = a[i] * b[i];
+				else for (int i = 0; i < out.length; i++)
+					out[i] = a[i] * scalar;
+				return out;
+			case DIVISION:
+				checkDivisor(b, scalar);
+				if (b != null) for (int i = 0; i < out.length; i++)
+					out[i] = a[i] / b[i];
+				else for (int i = 0; i < out.length; i++)
+					out[i] = a[i] / scalar;
+				return out;
+			case MODULO:
+				checkDivisor(b, scalar);
+				if (b != null) for (int i = 0; i < out.length; i++)
+					out[i] = a[i] % b[i];
+				else for (int i = 0; i < out.length; i++)
+					out[i] = a[i] % scalar;
+				return out;
+			case POWER:
+				if (b != null) for (int i = 0; i < out.length; i++)
+					out[i] = Math.pow(a[i], b[i]);
+				else for (int i = 0; i < out.length; i++)
+					out[i] = Math.pow(a[i], scalar);
+				return out;
+			default:
+				return null;
+		}
+	}
+
+	private static void checkDivisor(long[] b, long scalar)
+	{
+		if (b == null ? scalar == 0L : contains(b, 0L))
+			throw new ArcheTextOperationException("Divide by zero.");
+	}
+
+	private static void checkDivisor(double[] b, double scalar)
+	{
+		if (b == null ? scalar == 0.0 : contains(b, 0.0))
+			throw new ArcheTextOperationException("Divide by zero.");
+	}
+
+	private static boolean contains(long[] array, long value)
+	{
+		for (long l : array)
+			if (l == value)
+				return true;
+		return false;
+	}
+
+	private static boolean contains(double[] array, double value)
+	{
+		for (double d : array)
+			if (d == value)
+				return true;
+		return false;
+	}
+
+}
@@ -7,14 +7,15 @@
  ******************************************************************************/
 package com.blackrook.archetext;
 
-import java.util.HashMap;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
 import java.util.HashSet;
 import java.util.Iterator;
 import java.util.LinkedList;
-import java.util.Map;
+import java.util.List;
 import java.util.Queue;
 import java.util.Set;
-import java.util.Stack;
 
 import com.blackrook.archetext.struct.Utils;
 
@@ -33,25 +34,137 @@ public class ArcheTextObject
 	/** Object hierarchy parents. */
 	private Queue<ArcheTextObject> parents;
 	/** Object local fields. */
-	private Map<String, AField> fields;
+	private ArcheTextFieldTable fields;
+	/** Loader for a body that has not been read yet, if any. */
+	private volatile BodyLoader bodyLoader;
+	/** Set while the body loader is running. */
+	private boolean bodyLoading;
 
-	/** Field */
-	private class AField
+	/**
+	 * Accumulator for runs of {@link Combinator#ADD} on strings, lists, or sets in a field's lineage.
+	 * The run is added to a single builder that is turned into a value once at the end, 
+	 * instead of making a new value at each step. The result is the same.
+	 */
+	private static class Accumulator
 	{
-		private Combinator combinator;
-		private ArcheTextValue value;
+		private ArcheTextValue.Type type;
+		private StringBuilder stringBuilder;
+		private List<ArcheTextValue> list;
+		private Set<ArcheTextValue> set;
+		
+		@SuppressWarnings("unchecked")
+		Accumulator(ArcheTextValue start)
+		{
+			this.type = start.type;
+			switch (type)
+			{
+				case STRING:
+					this.stringBuilder = new StringBuilder(start.getString());
+					break;
+				case LIST:
+					this.list = new ArrayList<ArcheTextValue>((List<ArcheTextValue>)start.value);
+					break;
+				case SET:
+					this.set = new HashSet<ArcheTextValue>();
+					set.addAll((Set<ArcheTextValue>)start.value);
+					break;
+				default:
+					throw new IllegalArgumentException("Internal error - can't accumulate " + type + ".");
+			}
+		}
+		
+		// Returns true if a field can start an accumulation on a value.
+		static boolean canStart(ArcheTextValue value, Combinator combinator, ArcheTextValue fieldValue)
+		{
+			if (value == null || combinator != Combinator.ADD || value.type != fieldValue.type)
+				return false;
+			switch (value.type)
+			{
+				case STRING:
+				case LIST:
+				case SET:
+					return true;
+				default:
+					return false;
+			}
+		}
+		
+		// Returns true if a field can be added to this accumulation.
+		boolean accepts(Combinator combinator, ArcheTextValue fieldValue)
+		{
+			return combinator == Combinator.ADD && fieldValue.type == type;
+		}
+		
+		@SuppressWarnings("unchecked")
+		void add(ArcheTextValue value)
+		{
+			switch (type)
+			{
+				case STRING:
+					stringBuilder.append(value.getString());
+					break;
+				case LIST:
+					list.addAll((List<ArcheTextValue>)value.value);
+					break;
+				default:
+					set.addAll((Set<ArcheTextValue>)value.value);
+					break;
+			}
+		}
 		
-		AField(Combinator combinator, ArcheTextValue value)
+		ArcheTextValue freeze()
 		{
-			this.combinator = combinator;
-			this.value = value;
+			switch (type)
+			{
+				case STRING:
+					return new ArcheTextValue(type, stringBuilder.toString());
+				case LIST:
+					return new ArcheTextValue(type, list);
+				default:
+					return new ArcheTextValue(type, set);
+			}
 		}
+	}
+	
+	/**
+	 * The fields found for a name in an object's lineage, in the order found.
+	 */
+	private static class FieldStack
+	{
+		private Combinator[] combinators;
+		private ArcheTextValue[] values;
+		private int size;
 		
-		public String toString()
+		FieldStack()
 		{
-			return combinator.getAssignmentOperator() + " " + value.toString();
+			this.combinators = new Combinator[4];
+			this.values = new ArcheTextValue[4];
+			this.size = 0;
 		}
 		
+		void push(Combinator combinator, ArcheTextValue value)
+		{
+			if (size == values.length)
+			{
+				combinators = Arrays.copyOf(combinators, size * 2);
+				values = Arrays.copyOf(values, size * 2);
+			}
+			combinators[size] = combinator;
+			values[size] = value;
+			size++;
+		}
+	}
+	
+	/**
+	 * Loader for deferred object bodies.
+	 */
+	interface BodyLoader
+	{
+		/**
+		 * Reads the body of an object into the object.
+		 * @param object the object to fill.
+		 */
+		void loadBody(ArcheTextObject object);
 	}
 	
 	/**
@@ -105,6 +218,7 @@ public class ArcheTextObject
 	 */
 	public Iterable<ArcheTextObject> getParents()
 	{
+		ensureLoaded();
 		return parents;
 	}
 
@@ -131,6 +245,7 @@ public class ArcheTextObject
 	 */
 	public void pushParent(ArcheTextObject parent)
 	{
+		ensureLoaded();
 		if (parents == null)
 			parents = new LinkedList<ArcheTextObject>();
 		parents.add(parent);
@@ -143,6 +258,7 @@ public class ArcheTextObject
 	 */
 	public void addParent(ArcheTextObject parent)
 	{
+		ensureLoaded();
 		if (parents == null)
 			parents = new LinkedList<ArcheTextObject>();
 		parents.add(parent);
@@ -155,6 +271,7 @@ public class ArcheTextObject
 	 */
 	public boolean removeParent(ArcheTextObject parent)
 	{
+		ensureLoaded();
 		if (parents == null)
 			return false;
 		boolean out = parents.remove(parent);
@@ -182,9 +299,10 @@ public class ArcheTextObject
 	 */
 	public void set(String name, Combinator combinator, Object value)
 	{
+		ensureLoaded();
 		if (fields == null)
-			fields = new HashMap<String, AField>();
-		fields.put(name, new AField(combinator, ArcheTextValue.create(value)));
+			fields = new ArcheTextFieldTable();
+		fields.put(name, combinator, ArcheTextValue.create(value), null);
 	}
 	
 	/**
@@ -193,6 +311,7 @@ public class ArcheTextObject
 	 */
 	public void clear(String name)
 	{
+		ensureLoaded();
 		if (fields == null)
 			return;
 		fields.remove(name);
@@ -207,9 +326,10 @@ public class ArcheTextObject
 	 */
 	public boolean containsLocal(String name)
 	{
+		ensureLoaded();
 		if (fields == null)
 			return false;
-		return fields.containsKey(name);
+		return fields.indexOf(name) >= 0;
 	}
 	
 	/**
@@ -222,26 +342,29 @@ public class ArcheTextObject
 	 */
 	public <T> T getLocal(String name, Class<T> outputType)
 	{
+		ensureLoaded();
 		if (fields == null)
 			return Utils.createForType(null, outputType);
 
-		AField f = fields.get(name);
-		if (f == null)
+		int i = fields.indexOf(name);
+		if (i < 0)
 			return Utils.createForType(null, outputType);
 		else
-			return Utils.createForType(f.value, outputType);
+			return Utils.createForType(fields.getValue(i), outputType);
 	}
 	
 	/**
-	 * Gets the native value of a local field.
-	 * The field's value is taken from THIS OBJECT, not its parents.
+	 * Gets the position of a local field in this object's field table.
+	 * The field is taken from THIS OBJECT, not its parents.
 	 * @param name the name of the field.
+	 * @return the position, or -1 if this object does not have the field.
 	 */
-	AField getLocalField(String name)
+	int getLocalFieldIndex(String name)
 	{
+		ensureLoaded();
 		if (fields == null)
-			return null;
-		return fields.get(name);
+			return -1;
+		return fields.indexOf(name);
 	}
 	
 	/**
@@ -268,8 +391,15 @@ public class ArcheTextObject
 		ArcheTextValue rv = getField(name);
 		if (rv == null)
 			return Utils.createForType(null, outputType);
-		else
-			return rv.createForType(name, outputType); 
+
+		ArcheTextProfiler profiler = ArcheTextProfiler.current;
+		if (profiler == null)
+			return rv.createForType(name, outputType);
+
+		long start = System.nanoTime();
+		T out = rv.createForType(name, outputType);
+		profiler.addConversion(this, name, System.nanoTime() - start);
+		return out;
 	}
 	
 	/**
@@ -277,9 +407,77 @@ public class ArcheTextObject
 	 */
 	void setField(String name, Combinator combinator, ArcheTextValue value)
 	{
+		setField(name, combinator, value, null);
+	}
+
+	/**
+	 * Sets the value of a field read in from the reader, plus the expression it came from.
+	 */
+	void setField(String name, Combinator combinator, ArcheTextValue value, ArcheTextExpression expression)
+	{
+		ensureLoaded();
 		if (fields == null)
-			fields = new HashMap<String, AField>();
-		fields.put(name, new AField(combinator, value));
+			fields = new ArcheTextFieldTable();
+		fields.put(name, combinator, value, expression);
+	}
+
+	/**
+	 * Sizes the local field table to the current field count.
+	 * Called by the reader once an object is complete.
+	 */
+	void trimFields()
+	{
+		if (fields != null)
+			fields.trim();
+	}
+
+	/**
+	 * Re-evaluates a local field from the expression that it was read from, 
+	 * using the current values of the fields that it refers to.
+	 * Only fields read by {@link ArcheTextReader} whose values depend on other fields keep their expressions.
+	 * Setting a field through any other method, or flattening this object, drops them.
+	 * @param name the name of the field.
+	 * @return true if the field was re-evaluated, false if it has no expression to re-evaluate.
+	 * @throws com.blackrook.archetext.exception.ArcheTextOperationException if the value cannot be calculated.
+	 */
+	public boolean reevaluate(String name)
+	{
+		int i = getLocalFieldIndex(name);
+		ArcheTextExpression expression;
+		if (i < 0 || (expression = fields.getExpression(i)) == null)
+			return false;
+		setField(name, fields.getCombinator(i), expression.evaluate(this), expression);
+		return true;
+	}
+
+	/**
+	 * @return true if any local field keeps an expression.
+	 */
+	boolean hasExpressions()
+	{
+		ensureLoaded();
+		return fields != null && fields.hasExpressions();
+	}
+
+	/**
+	 * Creates a copy of this object (not including parents) with the fields that have 
+	 * expressions evaluated against another object.
+	 */
+	ArcheTextObject evaluateCopy(ArcheTextObject context)
+	{
+		ensureLoaded();
+		ArcheTextObject out = new ArcheTextObject(type, identity);
+		if (fields != null)
+		{
+			out.fields = new ArcheTextFieldTable(fields.size());
+			for (int i = 0; i < fields.size(); i++)
+			{
+				ArcheTextExpression expression = fields.getExpression(i);
+				ArcheTextValue value = expression != null ? expression.evaluate(context) : fields.getValue(i);
+				out.fields.put(fields.getName(i), fields.getCombinator(i), value, expression);
+			}
+		}
+		return out;
 	}
 
 	/**
@@ -288,29 +486,96 @@ public class ArcheTextObject
 	 */
 	ArcheTextValue getField(String name)
 	{
-		Stack<AField> fields = new Stack<AField>();
-		accumFields(name, this, fields);
+		ArcheTextProfiler profiler = ArcheTextProfiler.current;
+		long start = profiler != null ? System.nanoTime() : 0L;
+
+		ArcheTextValue out;
+		int depth;
+		int combinations;
+		ensureLoaded();
+		if (parents == null)
+		{
+			// no lineage to walk.
+			int local = fields != null ? fields.indexOf(name) : -1;
+			depth = 1;
+			combinations = local >= 0 ? 1 : 0;
+			out = local >= 0 ? fields.getValue(local).combineWith(fields.getCombinator(local), null) : null;
+		}
+		else
+		{
+			FieldStack stack = new FieldStack();
+			depth = accumFields(name, this, stack, 1);
+			combinations = stack.size;
+			out = combine(stack);
+		}
+		
+		if (profiler != null)
+			profiler.addLookup(this, name, depth, combinations, System.nanoTime() - start);
+		return out;
+	}
+	
+	/**
+	 * Gets the value that a field would have without this object's own value, 
+	 * going through the lineage of this object's parents only.
+	 * This is the value that the field's own name refers to while the field is being assigned.
+	 * @param name the name of the field.
+	 */
+	ArcheTextValue getInheritedField(String name)
+	{
+		ensureLoaded();
+		if (parents == null)
+			return null;
 		
+		FieldStack stack = new FieldStack();
+		for (ArcheTextObject parent : parents)
+			accumFields(name, parent, stack, 2);
+		return combine(stack);
+	}
+	
+	// combines the values found in a lineage, from the farthest ancestor to the nearest.
+	private static ArcheTextValue combine(FieldStack stack)
+	{
 		ArcheTextValue out = null;
-		while (!fields.isEmpty())
+		Accumulator accumulator = null;
+		for (int i = stack.size - 1; i >= 0; i--)
 		{
-			AField field = fields.pop();
-			out = field.value.combineWith(field.combinator, out); 
+			Combinator combinator = stack.combinators[i];
+			ArcheTextValue value = stack.values[i];
+			if (accumulator != null)
+			{
+				if (accumulator.accepts(combinator, value))
+				{
+					accumulator.add(value);
+					continue;
+				}
+				out = accumulator.freeze();
+				accumulator = null;
+			}
+			
+			if (Accumulator.canStart(out, combinator, value))
+			{
+				accumulator = new Accumulator(out);
+				accumulator.add(value);
+			}
+			else
+				out = value.combineWith(combinator, out); 
 		}
 		
-		return out;
+		return accumulator != null ? accumulator.freeze() : out;
 	}
 	
-	// recursively finds the correct value.
-	private static void accumFields(String name, ArcheTextObject atobject, Stack<AField> values)
+	// recursively finds the correct value, returns the deepest level walked.
+	private static int accumFields(String name, ArcheTextObject atobject, FieldStack stack, int level)
 	{
-		AField field = atobject.getLocalField(name);
+		int i = atobject.getLocalFieldIndex(name);
 		
-		if (field != null)
-			values.push(field);
+		if (i >= 0)
+			stack.push(atobject.fields.getCombinator(i), atobject.fields.getValue(i));
 		
+		int out = level;
 		if (atobject.parents != null) for (ArcheTextObject parent : atobject.parents)
-			accumFields(name, parent, values);
+			out = Math.max(out, accumFields(name, parent, stack, level + 1));
+		return out;
 	}
 	
 	/**
@@ -321,16 +586,16 @@ public class ArcheTextObject
 	 */
 	public void cascade(ArcheTextObject addend)
 	{
+		addend.ensureLoaded();
 		if (addend.parents != null) for (ArcheTextObject parent : addend.parents)
 			this.addParent(parent);
 		
-		Iterator<String> fieldNames = addend.fieldNameIterator();
-		while (fieldNames.hasNext())
+		if (addend.fields != null) for (int i = 0; i < addend.fields.size(); i++)
 		{
-			String fname = fieldNames.next();
-			AField af = addend.getLocalField(fname);
-			AField tf = this.getLocalField(fname);
-			setField(fname, af.combinator, af.value.combineWith(af.combinator, tf != null ? tf.value : null));
+			String fname = addend.fields.getName(i);
+			Combinator combinator = addend.fields.getCombinator(i);
+			int t = this.getLocalFieldIndex(fname);
+			setField(fname, combinator, addend.fields.getValue(i).combineWith(combinator, t >= 0 ? this.fields.getValue(t) : null));
 		}
 	}
 	
@@ -344,6 +609,7 @@ public class ArcheTextObject
 		for (String name : getAvailableFieldNames())
 			setField(name, Combinator.SET, getField(name));
 		parents = null;
+		trimFields();
 	}
 	
 	/**
@@ -360,8 +626,9 @@ public class ArcheTextObject
 	// finds all field names in the hierarchy.
 	private static void accumFieldNames(Set<String> nameSet, ArcheTextObject object)
 	{
-		if (object.fields != null) for (Map.Entry<String, AField> pair : object.fields.entrySet())
-			nameSet.add(pair.getKey());
+		object.ensureLoaded();
+		if (object.fields != null) for (int i = 0; i < object.fields.size(); i++)
+			nameSet.add(object.fields.getName(i));
 		
 		if (object.parents != null) for (ArcheTextObject parent : object.parents)
 			accumFieldNames(nameSet, parent);
@@ -408,12 +675,56 @@ public class ArcheTextObject
 	 */
 	public Iterator<String> fieldNameIterator()
 	{
-		return fields.keySet().iterator();
+		ensureLoaded();
+		return fields != null ? fields.nameIterator() : Collections.<String>emptyIterator();
+	}
+	
+	/**
+	 * @return false if this object's body was deferred and has not been read yet, true otherwise.
+	 * @see ArcheTextRoot#setLazyLoading(boolean)
+	 */
+	public boolean isLoaded()
+	{
+		return bodyLoader == null;
+	}
+	
+	/**
+	 * Sets the loader for this object's deferred body.
+	 * The body is read on first access of this object's fields or parents.
+	 */
+	void setBodyLoader(BodyLoader loader)
+	{
+		this.bodyLoader = loader;
+	}
+	
+	// reads the deferred body, if any. Re-entrant calls from the loader itself do nothing.
+	private void ensureLoaded()
+	{
+		if (bodyLoader == null)
+			return;
+		
+		synchronized (this)
+		{
+			if (bodyLoader == null || bodyLoading)
+				return;
+			
+			bodyLoading = true;
+			try {
+				bodyLoader.loadBody(this);
+				bodyLoader = null;
+			} catch (RuntimeException e) {
+				fields = null;
+				throw e;
+			} finally {
+				bodyLoading = false;
+			}
+		}
 	}
 	
 	@Override
 	public String toString()
 	{
+		ensureLoaded();
 		StringBuilder sb = new StringBuilder();
 		
 		if (isAnonymous())
@@ -434,8 +745,11 @@ public class ArcheTextObject
 
 		sb.append("{ ");
 
-		if (fields != null) for (Map.Entry<String, AField> pair : fields.entrySet())
-			sb.append(pair.getKey()).append(' ').append(pair.getValue()).append("; ");
+		if (fields != null) for (int i = 0; i < fields.size(); i++)
+		{
+			sb.append(fields.getName(i)).append(' ').append(fields.getCombinator(i).getAssignmentOperator())
+				.append(' ').append(fields.getValue(i)).append("; ");
+		}
 		
 		sb.append("}");
 		return sb.toString();
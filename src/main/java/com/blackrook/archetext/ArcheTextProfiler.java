@@ -0,0 +1,472 @@
+/*******************************************************************************
+ * Copyright (c) 2016-2020 Black Rook Software
+ * This program and the accompanying materials are made available under the 
+ * terms of the GNU Lesser Public License v2.1 which accompanies this 
+ * distribution, and is available at 
+ * http://www.gnu.org/licenses/old-licenses/lgpl-2.1.html
+ ******************************************************************************/
+package com.blackrook.archetext;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+
+import com.blackrook.archetext.jfr.EventSupport;
+import com.blackrook.archetext.jfr.FieldLookupEvent;
+
+/**
+ * Counts and timings of field resolution on {@link ArcheTextObject}s.
+ * <p>
+ * Field values are resolved by walking an object's lineage and combining the values found along the way.
+ * While a profiler is running (see {@link #start()}), every lookup through {@link ArcheTextObject#get(String, Class)}
+ * (and every field reference in a re-evaluated expression) is counted per object type and field name, along with
+ * how deep into the hierarchy the lookup had to walk, how many field declarations were combined, and how many values
+ * were converted to Java types. The slowest lookups are kept as samples.
+ * <p>
+ * Only one profiler can be running at a time, since objects are not tied to a root. While no profiler is running,
+ * lookups are not instrumented. Values accumulate until {@link #reset()} is called.
+ * <p>
+ * Lookups are also committed as <code>com.blackrook.archetext.FieldLookup</code> events to Java Flight Recorder,
+ * if it is available and recording them.
+ * <p>
+ * This class is thread-safe.
+ * @author Matthew Tropiano
+ */
+public class ArcheTextProfiler
+{
+	/** Default amount of slowest lookups to keep. */
+	public static final int DEFAULT_SAMPLE_SIZE = 32;
+
+	/** The running profiler, if any. */
+	static volatile ArcheTextProfiler current = null;
+
+	/**
+	 * Profile of a single field on a single object type.
+	 */
+	public static class FieldProfile
+	{
+		/** The object type. */
+		private String type;
+		/** The field name. */
+		private String name;
+
+		private LongAdder lookups;
+		private LongAdder nanos;
+		private LongAdder depth;
+		private LongAccumulator maxDepth;
+		private LongAdder combinations;
+		private LongAdder conversions;
+		private LongAdder conversionNanos;
+
+		private FieldProfile(String type, String name)
+		{
+			this.type = type;
+			this.name = name;
+			this.lookups = new LongAdder();
+			this.nanos = new LongAdder();
+			this.depth = new LongAdder();
+			this.maxDepth = new LongAccumulator(Math::max, 0L);
+			this.combinations = new LongAdder();
+			this.conversions = new LongAdder();
+			this.conversionNanos = new LongAdder();
+		}
+
+		/**
+		 * @return the object type. Can be null for anonymous objects.
+		 */
+		public String getType()
+		{
+			return type;
+		}
+
+		/**
+		 * @return the field name.
+		 */
+		public String getName()
+		{
+			return name;
+		}
+
+		/**
+		 * @return the amount of times that this field was looked up.
+		 */
+		public long getLookupCount()
+		{
+			return lookups.sum();
+		}
+
+		/**
+		 * @return the total time spent looking up this field, in nanoseconds.
+		 */
+		public long getNanos()
+		{
+			return nanos.sum();
+		}
+
+		/**
+		 * @return the average hierarchy depth walked per lookup (1 is the object itself).
+		 */
+		public double getAverageDepth()
+		{
+			long count = lookups.sum();
+			return count > 0 ? (double)depth.sum() / count : 0.0;
+		}
+
+		/**
+		 * @return the deepest hierarchy depth walked by a lookup (1 is the object itself).
+		 */
+		public long getMaxDepth()
+		{
+			return maxDepth.get();
+		}
+
+		/**
+		 * @return the amount of field declarations whose combinators were applied, over all lookups.
+		 */
+		public long getCombinationCount()
+		{
+			return combinations.sum();
+		}
+
+		/**
+		 * @return the amount of times that this field's value was converted to a Java type.
+		 */
+		public long getConversionCount()
+		{
+			return conversions.sum();
+		}
+
+		/**
+		 * @return the total time spent converting this field's value to Java types, in nanoseconds.
+		 */
+		public long getConversionNanos()
+		{
+			return conversionNanos.sum();
+		}
+
+		@Override
+		public String toString()
+		{
+			return type + "." + name + ": " + getLookupCount() + " lookups, " + getNanos() + " ns, "
+				+ String.format("%.2f", getAverageDepth()) + " average depth, " + getMaxDepth() + " max depth, "
+				+ getCombinationCount() + " combinations, " + getConversionCount() + " conversions, " + getConversionNanos() + " conversion ns";
+		}
+	}
+
+	/**
+	 * A single sampled lookup.
+	 */
+	public static class Lookup
+	{
+		private String type;
+		private String identity;
+		private String name;
+		private int depth;
+		private int combinations;
+		private long nanos;
+
+		private Lookup(String type, String identity, String name, int depth, int combinations, long nanos)
+		{
+			this.type = type;
+			this.identity = identity;
+			this.name = name;
+			this.depth = depth;
+			this.combinations = combinations;
+			this.nanos = nanos;
+		}
+
+		/**
+		 * @return the type of the object that the lookup was on. Can be null for anonymous objects.
+		 */
+		public String getType()
+		{
+			return type;
+		}
+
+		/**
+		 * @return the name of the object that the lookup was on. Can be null for default or anonymous objects.
+		 */
+		public String getIdentity()
+		{
+			return identity;
+		}
+
+		/**
+		 * @return the field name.
+		 */
+		public String getName()
+		{
+			return name;
+		}
+
+		/**
+		 * @return the hierarchy depth walked (1 is the object itself).
+		 */
+		public int getDepth()
+		{
+			return depth;
+		}
+
+		/**
+		 * @return the amount of field declarations whose combinators were applied.
+		 */
+		public int getCombinationCount()
+		{
+			return combinations;
+		}
+
+		/**
+		 * @return the time taken, in nanoseconds.
+		 */
+		public long getNanos()
+		{
+			return nanos;
+		}
+
+		@Override
+		public String toString()
+		{
+			return type + (identity != null ? " " + identity : "") + "." + name + ": " + nanos + " ns, depth " + depth + ", " + combinations + " combinations";
+		}
+	}
+
+	/** Object type to field name to profile. */
+	private Map<String, Map<String, FieldProfile>> typeMap;
+	/** Total lookups. */
+	private LongAdder lookups;
+	/** Total conversions. */
+	private LongAdder conversions;
+	/** Total combinator applications. */
+	private LongAdder combinations;
+
+	/** Amount of slowest lookups to keep. */
+	private int sampleSize;
+	/** Slowest lookups, fastest first. */
+	private PriorityQueue<Lookup> samples;
+	/** Time that a lookup has to exceed to be sampled. */
+	private volatile long sampleThreshold;
+
+	/**
+	 * Creates a new profiler that keeps the {@value #DEFAULT_SAMPLE_SIZE} slowest lookups.
+	 */
+	public ArcheTextProfiler()
+	{
+		this(DEFAULT_SAMPLE_SIZE);
+	}
+
+	/**
+	 * Creates a new profiler.
+	 * @param sampleSize the amount of slowest lookups to keep. Can be 0.
+	 * @throws IllegalArgumentException if sampleSize is less than 0.
+	 */
+	public ArcheTextProfiler(int sampleSize)
+	{
+		if (sampleSize < 0)
+			throw new IllegalArgumentException("Sample size cannot be less than 0.");
+		this.typeMap = new ConcurrentHashMap<>();
+		this.lookups = new LongAdder();
+		this.conversions = new LongAdder();
+		this.combinations = new LongAdder();
+		this.sampleSize = sampleSize;
+		this.samples = new PriorityQueue<>(Math.max(sampleSize, 1), Comparator.comparingLong(Lookup::getNanos));
+		this.sampleThreshold = sampleSize > 0 ? -1L : Long.MAX_VALUE;
+	}
+
+	/**
+	 * @return the running profiler, or null if no profiler is running.
+	 */
+	public static ArcheTextProfiler getCurrent()
+	{
+		return current;
+	}
+
+	/**
+	 * Starts this profiler, stopping the running one, if any.
+	 */
+	public void start()
+	{
+		synchronized (ArcheTextProfiler.class)
+		{
+			current = this;
+		}
+	}
+
+	/**
+	 * Stops this profiler, if it is running.
+	 */
+	public void stop()
+	{
+		synchronized (ArcheTextProfiler.class)
+		{
+			if (current == this)
+				current = null;
+		}
+	}
+
+	/**
+	 * @return true if this profiler is running, false if not.
+	 */
+	public boolean isRunning()
+	{
+		return current == this;
+	}
+
+	/**
+	 * @return the total amount of field lookups.
+	 */
+	public long getLookupCount()
+	{
+		return lookups.sum();
+	}
+
+	/**
+	 * @return the total amount of field declarations whose combinators were applied.
+	 */
+	public long getCombinationCount()
+	{
+		return combinations.sum();
+	}
+
+	/**
+	 * @return the total amount of field values converted to Java types.
+	 */
+	public long getConversionCount()
+	{
+		return conversions.sum();
+	}
+
+	/**
+	 * Gets the profile of a single field.
+	 * @param type the object type. Can be null for anonymous objects.
+	 * @param name the field name.
+	 * @return the profile, or null if the field was never looked up.
+	 */
+	public FieldProfile getFieldProfile(String type, String name)
+	{
+		Map<String, FieldProfile> fieldMap = typeMap.get(typeKey(type));
+		return fieldMap != null ? fieldMap.get(name) : null;
+	}
+
+	/**
+	 * @return the profiles of every field looked up so far, most looked up first.
+	 */
+	public List<FieldProfile> getFieldProfiles()
+	{
+		List<FieldProfile> out = new ArrayList<>();
+		for (Map<String, FieldProfile> fieldMap : typeMap.values())
+			out.addAll(fieldMap.values());
+		out.sort((a, b) -> Long.compare(b.getLookupCount(), a.getLookupCount()));
+		return out;
+	}
+
+	/**
+	 * @return the sampled slowest lookups, slowest first.
+	 */
+	public List<Lookup> getSlowestLookups()
+	{
+		List<Lookup> out;
+		synchronized (samples)
+		{
+			out = new ArrayList<>(samples);
+		}
+		out.sort((a, b) -> Long.compare(b.getNanos(), a.getNanos()));
+		return Collections.unmodifiableList(out);
+	}
+
+	/**
+	 * Clears all counts and samples.
+	 */
+	public void reset()
+	{
+		typeMap.clear();
+		lookups.reset();
+		conversions.reset();
+		combinations.reset();
+		synchronized (samples)
+		{
+			samples.clear();
+			sampleThreshold = sampleSize > 0 ? -1L : Long.MAX_VALUE;
+		}
+	}
+
+	/**
+	 * Adds a field lookup.
+	 * @param object the object that the lookup was on.
+	 * @param name the field name.
+	 * @param depth the hierarchy depth walked (1 is the object itself).
+	 * @param combinations the amount of field declarations combined.
+	 * @param nanos the time taken, in nanoseconds.
+	 */
+	void addLookup(ArcheTextObject object, String name, int depth, int combinations, long nanos)
+	{
+		FieldProfile profile = getOrCreateProfile(object.getType(), name);
+		profile.lookups.increment();
+		profile.nanos.add(nanos);
+		profile.depth.add(depth);
+		profile.maxDepth.accumulate(depth);
+		profile.combinations.add(combinations);
+		this.lookups.increment();
+		this.combinations.add(combinations);
+
+		if (nanos > sampleThreshold)
+			addSample(new Lookup(object.getType(), object.getIdentity(), name, depth, combinations, nanos));
+
+		if (EventSupport.AVAILABLE)
+			FieldLookupEvent.commit(object.getType(), object.getIdentity(), name, depth, combinations, nanos);
+	}
+
+	/**
+	 * Adds a field value conversion.
+	 * @param object the object that the field was on.
+	 * @param name the field name.
+	 * @param nanos the time taken, in nanoseconds.
+	 */
+	void addConversion(ArcheTextObject object, String name, long nanos)
+	{
+		FieldProfile profile = getOrCreateProfile(object.getType(), name);
+		profile.conversions.increment();
+		profile.conversionNanos.add(nanos);
+		this.conversions.increment();
+	}
+
+	private FieldProfile getOrCreateProfile(String type, String name)
+	{
+		Map<String, FieldProfile> fieldMap = typeMap.get(typeKey(type));
+		if (fieldMap == null)
+			fieldMap = typeMap.computeIfAbsent(typeKey(type), (key) -> new ConcurrentHashMap<>());
+		FieldProfile out = fieldMap.get(name);
+		if (out == null)
+			out = fieldMap.computeIfAbsent(name, (key) -> new FieldProfile(type, key));
+		return out;
+	}
+
+	private void addSample(Lookup lookup)
+	{
+		synchronized (samples)
+		{
+			if (samples.size() < sampleSize)
+				samples.add(lookup);
+			else if (lookup.nanos > samples.peek().nanos)
+			{
+				samples.poll();
+				samples.add(lookup);
+			}
+
+			if (samples.size() >= sampleSize)
+				sampleThreshold = samples.peek().nanos;
+		}
+	}
+
+	// concurrent maps cannot have null keys.
+	private static String typeKey(String type)
+	{
+		return type != null ? type : "";
+	}
+
+}
@@ -14,19 +14,27 @@ import java.io.InputStream;
 import java.io.InputStreamReader;
 import java.io.Reader;
 import java.io.StringReader;
+import java.util.ArrayDeque;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
 import java.util.Deque;
 import java.util.HashMap;
 import java.util.HashSet;
 import java.util.Iterator;
 import java.util.LinkedList;
 import java.util.List;
+import java.util.Objects;
 import java.util.Queue;
 import java.util.Set;
+import java.util.function.Consumer;
 
 import com.blackrook.archetext.ArcheTextValue.Type;
 import com.blackrook.archetext.exception.ArcheTextOperationException;
 import com.blackrook.archetext.exception.ArcheTextParseException;
+import com.blackrook.archetext.jfr.EventSupport;
+import com.blackrook.archetext.jfr.ParseEvent;
 import com.blackrook.archetext.struct.HashDequeMap;
 import com.blackrook.archetext.struct.Lexer;
 import com.blackrook.archetext.struct.PreprocessorLexer;
@@ -41,9 +49,11 @@ import com.blackrook.archetext.struct.PreprocessorLexer.Includer;
 public final class ArcheTextReader
 {
 	public static final String STREAMNAME_TEXT = "[Text String]";
+	/** Default amount of objects kept for lookups while streaming. */
+	public static final int DEFAULT_STREAM_WINDOW = 256;
 	
 	/** The singular instance for the kernel. */
-	private static final Kernel KERNEL_INSTANCE = new Kernel();
+	static final Kernel KERNEL_INSTANCE = new Kernel();
 
 	
 	private ArcheTextReader() {}
@@ -272,14 +282,485 @@ public final class ArcheTextReader
 	 */
 	public static void apply(String streamName, Reader reader, Includer includer, ArcheTextRoot root)
 	{
+		PreprocessorLexer lexer = new PreprocessorLexer(KERNEL_INSTANCE, streamName, reader);
+		ArcheTextDependencyIndex index = root.getDependencyIndex();
+		lexer.setIncluder(index != null ? new IndexingIncluder(includer, index) : includer);
+		ATParser parser = new ATParser(lexer);
+		MetricsListener listener = null;
+		if (root.getMetrics() != null)
+		{
+			listener = new MetricsListener(root.getMetrics(), streamName);
+			lexer.setListener(listener);
+			parser.metrics = listener;
+		}
+
+		ParseEvent event = EventSupport.AVAILABLE ? ParseEvent.start(streamName) : null;
+		try {
+			parser.readObjects(root);
+		} finally {
+			if (listener != null)
+				listener.end();
+			if (event != null)
+				event.finish();
+		}
+	}
+
+	/**
+	 * Reads ArcheText objects from a file and sends each completed object to a sink.
+	 * Uses the default includer.
+	 * @param file the file to read from.
+	 * @param sink the consumer to call for each completed object.
+	 * @param retain if true, objects are also kept in the returned root for parent and reference lookups.
+	 * @return a root of the retained objects (empty if retain is false).
+	 * @throws IOException if the stream can't be read.
+	 * @throws NullPointerException if file or sink is null.
+	 * @see #read(String, Reader, Includer, Consumer, boolean)
+	 */
+	public static ArcheTextRoot read(File file, Consumer<ArcheTextObject> sink, boolean retain) throws IOException
+	{
+		try (InputStream in = new FileInputStream(file))
+		{
+			return read(file.getPath(), new InputStreamReader(in), PreprocessorLexer.DEFAULT_INCLUDER, sink, retain);
+		}
+	}
+
+	/**
+	 * Reads ArcheText objects from a stream and sends each completed object to a sink.
+	 * Uses the default includer.
+	 * @param streamName the name of the stream.
+	 * @param in the stream to read from.
+	 * @param sink the consumer to call for each completed object.
+	 * @param retain if true, objects are also kept in the returned root for parent and reference lookups.
+	 * @return a root of the retained objects (empty if retain is false).
+	 * @throws NullPointerException if in or sink is null.
+	 * @see #read(String, Reader, Includer, Consumer, boolean)
+	 */
+	public static ArcheTextRoot read(String streamName, InputStream in, Consumer<ArcheTextObject> sink, boolean retain)
+	{
+		return read(streamName, new InputStreamReader(in), PreprocessorLexer.DEFAULT_INCLUDER, sink, retain);
+	}
+
+	/**
+	 * Reads ArcheText objects from a reader and sends each completed object to a sink.
+	 * <p>
+	 * The sink is called as soon as each object is complete (and flattened, if declared with <code>&lt;-</code>),
+	 * in the order that they are read, so that callers can bind, filter, or index objects while the rest of the input is read.
+	 * If objects are not retained, they are not available as parents or references for the objects after them,
+	 * and any such lookup is a parse error.
+	 * @param streamName the name of the stream.
+	 * @param reader the reader to read from.
+	 * @param includer the includer to use to resolve "included" paths.
+	 * @param sink the consumer to call for each completed object.
+	 * @param retain if true, objects are also kept in the returned root for parent and reference lookups.
+	 * @return a root of the retained objects (empty if retain is false).
+	 * @throws NullPointerException if reader, includer, or sink is null.
+	 * @throws ArcheTextParseException if a parse error occurs.
+	 */
+	public static ArcheTextRoot read(String streamName, Reader reader, Includer includer, Consumer<ArcheTextObject> sink, boolean retain)
+	{
+		if (sink == null)
+			throw new NullPointerException("sink can not be null");
+		
+		PreprocessorLexer lexer = new PreprocessorLexer(KERNEL_INSTANCE, streamName, reader);
+		lexer.setIncluder(includer);
+		ATParser parser = new ATParser(lexer);
+		parser.sink = sink;
+		parser.retainObjects = retain;
+		ArcheTextRoot out = new ArcheTextRoot();
+		ParseEvent event = EventSupport.AVAILABLE ? ParseEvent.start(streamName) : null;
+		try {
+			parser.readObjects(out);
+		} finally {
+			if (event != null)
+				event.finish();
+		}
+		return out;
+	}
+
+	/**
+	 * Streams ArcheText objects from a file to a handler, without building a root.
+	 * Uses the default includer, a window of {@value #DEFAULT_STREAM_WINDOW} objects, and no resolver.
+	 * @param file the file to read from.
+	 * @param handler the handler to send read events to.
+	 * @throws IOException if the stream can't be read.
+	 * @throws NullPointerException if file or handler is null.
+	 * @see #stream(String, Reader, Includer, ArcheTextHandler, int, ArcheTextHandler.Resolver)
+	 */
+	public static void stream(File file, ArcheTextHandler handler) throws IOException
+	{
+		stream(file, PreprocessorLexer.DEFAULT_INCLUDER, handler, DEFAULT_STREAM_WINDOW, null);
+	}
+
+	/**
+	 * Streams ArcheText objects from a file to a handler, without building a root.
+	 * @param file the file to read from.
+	 * @param includer the includer to use to resolve "included" paths.
+	 * @param handler the handler to send read events to.
+	 * @param windowSize the amount of most-recently-read objects to keep for parent and reference lookups.
+	 * @param resolver the resolver for objects not found in the window. Can be null.
+	 * @throws IOException if the stream can't be read.
+	 * @throws NullPointerException if file, includer, or handler is null.
+	 * @see #stream(String, Reader, Includer, ArcheTextHandler, int, ArcheTextHandler.Resolver)
+	 */
+	public static void stream(File file, Includer includer, ArcheTextHandler handler, int windowSize, ArcheTextHandler.Resolver resolver) throws IOException
+	{
+		try (InputStream in = new FileInputStream(file))
+		{
+			stream(file.getPath(), new InputStreamReader(in), includer, handler, windowSize, resolver);
+		}
+	}
+
+	/**
+	 * Streams ArcheText objects from a stream to a handler, without building a root.
+	 * Uses the default includer, a window of {@value #DEFAULT_STREAM_WINDOW} objects, and no resolver.
+	 * @param streamName the name of the stream.
+	 * @param in the stream to read from.
+	 * @param handler the handler to send read events to.
+	 * @throws NullPointerException if in or handler is null.
+	 * @see #stream(String, Reader, Includer, ArcheTextHandler, int, ArcheTextHandler.Resolver)
+	 */
+	public static void stream(String streamName, InputStream in, ArcheTextHandler handler)
+	{
+		stream(streamName, new InputStreamReader(in), PreprocessorLexer.DEFAULT_INCLUDER, handler, DEFAULT_STREAM_WINDOW, null);
+	}
+
+	/**
+	 * Streams ArcheText objects from a reader to a handler, without building a root.
+	 * Uses the default includer, a window of {@value #DEFAULT_STREAM_WINDOW} objects, and no resolver.
+	 * @param streamName the name of the stream.
+	 * @param reader the reader to read from.
+	 * @param handler the handler to send read events to.
+	 * @throws NullPointerException if reader or handler is null.
+	 * @see #stream(String, Reader, Includer, ArcheTextHandler, int, ArcheTextHandler.Resolver)
+	 */
+	public static void stream(String streamName, Reader reader, ArcheTextHandler handler)
+	{
+		stream(streamName, reader, PreprocessorLexer.DEFAULT_INCLUDER, handler, DEFAULT_STREAM_WINDOW, null);
+	}
+
+	/**
+	 * Streams ArcheText objects from a reader to a handler, without building a root.
+	 * <p>
+	 * Only the last <code>windowSize</code> objects read are kept for resolving parents and 
+	 * object references (<code>@{...}</code>), so memory use does not grow with the size of the input.
+	 * Objects that are not in the window anymore are looked up using the resolver, if one is provided.
+	 * If a lookup fails in both places, it is a parse error, same as a regular read.
+	 * @param streamName the name of the stream.
+	 * @param reader the reader to read from.
+	 * @param includer the includer to use to resolve "included" paths.
+	 * @param handler the handler to send read events to.
+	 * @param windowSize the amount of most-recently-read objects to keep for parent and reference lookups.
+	 * @param resolver the resolver for objects not found in the window. Can be null.
+	 * @throws NullPointerException if reader, includer, or handler is null.
+	 * @throws IllegalArgumentException if windowSize is less than 0.
+	 * @throws ArcheTextParseException if a parse error occurs.
+	 */
+	public static void stream(String streamName, Reader reader, Includer includer, ArcheTextHandler handler, int windowSize, ArcheTextHandler.Resolver resolver)
+	{
+		if (handler == null)
+			throw new NullPointerException("handler can not be null");
+		if (windowSize < 0)
+			throw new IllegalArgumentException("windowSize can not be less than 0");
+		
 		PreprocessorLexer lexer = new PreprocessorLexer(KERNEL_INSTANCE, streamName, reader);
 		lexer.setIncluder(includer);
 		ATParser parser = new ATParser(lexer);
-		parser.readObjects(root);
+		parser.handler = handler;
+		parser.resolver = resolver;
+		parser.window = new LinkedList<>();
+		parser.windowSize = windowSize;
+		ParseEvent event = EventSupport.AVAILABLE ? ParseEvent.start(streamName) : null;
+		try {
+			parser.readObjects(new ArcheTextRoot());
+		} finally {
+			if (event != null)
+				event.finish();
+		}
+	}
+
+	/**
+	 * Includer that records resolved includes in a dependency index.
+	 */
+	private static class IndexingIncluder implements Includer
+	{
+		private Includer includer;
+		private ArcheTextDependencyIndex index;
+
+		private IndexingIncluder(Includer includer, ArcheTextDependencyIndex index)
+		{
+			this.includer = includer;
+			this.index = index;
+		}
+
+		@Override
+		public String getIncludeResourcePath(String streamName, String path) throws IOException
+		{
+			String out = includer.getIncludeResourcePath(streamName, path);
+			if (out != null)
+				index.addInclude(streamName, out);
+			return out;
+		}
+
+		@Override
+		public InputStream getIncludeResource(String path) throws IOException
+		{
+			return includer.getIncludeResource(path);
+		}
+	}
+
+	/**
+	 * Lexer listener that adds to a set of metrics, and also takes the parser's counts.
+	 */
+	private static class MetricsListener implements PreprocessorLexer.Listener
+	{
+		private ArcheTextMetrics metrics;
+		private ArcheTextMetrics.StreamMetrics total;
+		private long startNanos;
+		/** Streams being read, innermost last. */
+		private Deque<ArcheTextMetrics.StreamMetrics> streams;
+		/** Start times of the streams being read. */
+		private Deque<Long> streamStartNanos;
+		/** Innermost stream being read. */
+		private ArcheTextMetrics.StreamMetrics current;
+		
+		private MetricsListener(ArcheTextMetrics metrics, String streamName)
+		{
+			this.metrics = metrics;
+			this.total = metrics.getTotal();
+			this.streams = new ArrayDeque<>(4);
+			this.streamStartNanos = new ArrayDeque<>(4);
+			this.startNanos = System.nanoTime();
+			startStream(streamName);
+		}
+		
+		// Ends the read.
+		private void end()
+		{
+			total.reads.increment();
+			total.nanos.add(System.nanoTime() - startNanos);
+		}
+
+		private void startStream(String streamName)
+		{
+			current = metrics.getOrCreateStream(streamName);
+			streams.addLast(current);
+			streamStartNanos.addLast(System.nanoTime());
+		}
+
+		@Override
+		public void onToken(Lexer.Token token)
+		{
+			total.tokens.increment();
+			current.tokens.increment();
+		}
+
+		@Override
+		public void onDirective(String streamName, String directiveName)
+		{
+			total.directives.increment();
+			current.directives.increment();
+		}
+
+		@Override
+		public void onInclude(String streamName, String includePath)
+		{
+			total.includes.increment();
+			current.includes.increment();
+			startStream(includePath);
+		}
+
+		@Override
+		public void onMacroExpansion(String streamName, String macroName)
+		{
+			total.macroExpansions.increment();
+			current.macroExpansions.increment();
+		}
+
+		@Override
+		public void onStreamEnd(String streamName, long characters)
+		{
+			ArcheTextMetrics.StreamMetrics stream = streams.pollLast();
+			if (stream == null)
+				return;
+			total.characters.add(characters);
+			stream.characters.add(characters);
+			stream.reads.increment();
+			stream.nanos.add(System.nanoTime() - streamStartNanos.pollLast());
+			if (!streams.isEmpty())
+				current = streams.peekLast();
+		}
+		
+		// the parser has read past the end of the object by now, so the stream is provided.
+		private void onObject(String streamName)
+		{
+			ArcheTextMetrics.StreamMetrics stream = metrics.getStream(streamName);
+			total.objects.increment();
+			(stream != null ? stream : current).objects.increment();
+		}
+
+		private void onExpression()
+		{
+			total.expressions.increment();
+			current.expressions.increment();
+		}
+
+		private void onParentLookup()
+		{
+			total.parentLookups.increment();
+			current.parentLookups.increment();
+		}
+	}
+
+	/**
+	 * A deferred object body, read on first access.
+	 * <p>
+	 * The body's tokens are packed into parallel arrays of types and line numbers, plus one string of all
+	 * of the lexemes and their end offsets in it. A body from one stream keeps one stream name.
+	 * Character indices are not kept.
+	 */
+	private static class DeferredBody implements ArcheTextObject.BodyLoader
+	{
+		private HashDequeMap<String, String> prototypes;
+		private short[] types;
+		private int[] lines;
+		private int[] lexemeEnds;
+		private String lexemes;
+		private String streamName;
+		/** Stream name per token, or null if every token came from {@link #streamName}. */
+		private String[] streamNames;
+		private List<ArcheTextObject> references;
+		private boolean flatten;
+		
+		private DeferredBody(HashDequeMap<String, String> prototypes, BodyRecorder recorder, List<ArcheTextObject> references, boolean flatten)
+		{
+			int size = recorder.size;
+			this.prototypes = prototypes;
+			this.types = Arrays.copyOf(recorder.types, size);
+			this.lines = Arrays.copyOf(recorder.lines, size);
+			this.lexemeEnds = Arrays.copyOf(recorder.lexemeEnds, size);
+			this.lexemes = recorder.lexemes.toString();
+			this.streamName = recorder.streamName;
+			this.streamNames = recorder.streamNames != null ? Arrays.copyOf(recorder.streamNames, size) : null;
+			this.references = references;
+			this.flatten = flatten;
+		}
+		
+		@Override
+		public void loadBody(ArcheTextObject object)
+		{
+			ATParser parser = new ATParser(new TokenReplayLexer(this), prototypes);
+			parser.readDeferredBody(object, references, flatten);
+		}
+		
+		private Lexer.Token getToken(int i)
+		{
+			String lexeme = lexemes.substring(i > 0 ? lexemeEnds[i - 1] : 0, lexemeEnds[i]);
+			return new Lexer.Token(getStreamName(i), types[i], lexeme, lines[i], -1);
+		}
+		
+		private String getStreamName(int i)
+		{
+			return streamNames != null ? streamNames[i] : streamName;
+		}
+	}
+
+	/**
+	 * Collects the tokens of a body that is being deferred.
+	 * One recorder is reused for every body that a parser defers.
+	 */
+	private static class BodyRecorder
+	{
+		private short[] types;
+		private int[] lines;
+		private int[] lexemeEnds;
+		private StringBuilder lexemes;
+		private String streamName;
+		private String[] streamNames;
+		private int size;
+		
+		private BodyRecorder()
+		{
+			this.types = new short[64];
+			this.lines = new int[64];
+			this.lexemeEnds = new int[64];
+			this.lexemes = new StringBuilder(256);
+			reset();
+		}
+		
+		private void reset()
+		{
+			lexemes.setLength(0);
+			streamName = null;
+			streamNames = null;
+			size = 0;
+		}
+		
+		private void add(Lexer.Token token)
+		{
+			if (size == types.length)
+			{
+				int capacity = size * 2;
+				types = Arrays.copyOf(types, capacity);
+				lines = Arrays.copyOf(lines, capacity);
+				lexemeEnds = Arrays.copyOf(lexemeEnds, capacity);
+				if (streamNames != null)
+					streamNames = Arrays.copyOf(streamNames, capacity);
+			}
+			
+			String name = token.getStreamName();
+			if (size == 0)
+				streamName = name;
+			else if (streamNames == null && !Objects.equals(streamName, name))
+			{
+				streamNames = new String[types.length];
+				Arrays.fill(streamNames, 0, size, streamName);
+			}
+			if (streamNames != null)
+				streamNames[size] = name;
+			
+			if (token.getLexeme() != null)
+				lexemes.append(token.getLexeme());
+			types[size] = (short)token.getType();
+			lines[size] = token.getLineNumber();
+			lexemeEnds[size] = lexemes.length();
+			size++;
+		}
+	}
+
+	/**
+	 * A lexer that replays the tokens of a deferred body.
+	 * The preprocessor state at the time of the original read is already applied to the tokens,
+	 * which is why bodies are deferred as tokens and not as character ranges.
+	 */
+	private static class TokenReplayLexer extends Lexer
+	{
+		private DeferredBody body;
+		private int next;
+		private Lexer.Token current;
+		
+		private TokenReplayLexer(DeferredBody body)
+		{
+			super(KERNEL_INSTANCE, new StringReader(""));
+			this.body = body;
+			this.next = 0;
+			this.current = null;
+		}
+		
+		@Override
+		public Lexer.Token nextToken()
+		{
+			return current = next < body.types.length ? body.getToken(next++) : null;
+		}
+		
+		@Override
+		public String getCurrentStreamName()
+		{
+			return current != null ? current.getStreamName() : null;
+		}
 	}
 
 	/** The Lexer Kernel for the ArcheText Lexers. */
-	private static class Kernel extends Lexer.Kernel
+	static class Kernel extends Lexer.Kernel
 	{
 
 		static final int TYPE_LBRACE = 0;
@@ -446,15 +927,65 @@ public final class ArcheTextReader
 		private boolean currentObjectParentsFlatten;
 		/** Current value from a parseValue() call. */
 		private ArcheTextValue currentValue;
+		/** Current value's expression from a parseValue() call, or null if the value is constant. */
+		private ArcheTextExpression currentExpression;
+		/** Name of the current object's field that is being assigned, if any. */
+		private String currentField;
+		/** Set if the current field's value refers to an earlier value of the same field in the same object. */
+		private boolean currentFieldSelfLocal;
+		
+		/** Pre-resolved object references, in order, for deferred bodies. */
+		private Queue<ArcheTextObject> objectReferences;
+		/** Token collector for deferred bodies, created on first use. */
+		private BodyRecorder bodyRecorder;
+		
+		/** Streaming event handler, if streaming. */
+		private ArcheTextHandler handler;
+		/** Streaming resolver for objects outside the window. */
+		private ArcheTextHandler.Resolver resolver;
+		/** Streaming window of recently-read objects. */
+		private Queue<ArcheTextObject> window;
+		/** Streaming window size. */
+		private int windowSize;
+		
+		/** Completed object sink, if any. */
+		private Consumer<ArcheTextObject> sink;
+		/** If false, completed objects are only sent to the sink. */
+		private boolean retainObjects;
+		
+		/** Expression value stack, shared by nested expressions. */
+		private ArcheTextValue[] valueStack;
+		/** Expression value stack size. */
+		private int valueStackSize;
+		/** Expression node stack, parallel to the value stack (null for constant values). */
+		private ArcheTextExpression[] expressionStack;
+		/** Expression operator stack, shared by nested expressions. */
+		private Operator[] operatorStack;
+		/** Expression operator stack size. */
+		private int operatorStackSize;
 		
 		/** List of errors. */
 		private LinkedList<String> errors;
 		
-		private ATParser(PreprocessorLexer lexer)
+		/** Metrics listener, if measuring. */
+		private MetricsListener metrics;
+		
+		private ATParser(Lexer lexer)
+		{
+			this(lexer, new HashDequeMap<String, String>());
+		}
+		
+		private ATParser(Lexer lexer, HashDequeMap<String, String> prototypes)
 		{
 			super(lexer);
 			this.errors = new LinkedList<>();
-			this.prototypes = new HashDequeMap<>();
+			this.prototypes = prototypes;
+			this.objectReferences = null;
+			this.valueStack = new ArcheTextValue[16];
+			this.expressionStack = new ArcheTextExpression[16];
+			this.valueStackSize = 0;
+			this.operatorStack = new Operator[16];
+			this.operatorStackSize = 0;
 		}
 		
 		private void addErrorMessage(String message)
@@ -489,21 +1020,71 @@ public final class ArcheTextReader
 			}
 			
 			if (!noError) // awkward, I know.
+				throwErrors();
+		}
+		
+		/**
+		 * Reads a deferred object body into an object.
+		 */
+		void readDeferredBody(ArcheTextObject object, Collection<ArcheTextObject> references, boolean flatten)
+		{
+			currentObject = object;
+			objectReferences = new LinkedList<>(references);
+			
+			// prime first token.
+			nextToken();
+			
+			boolean noError;
+			try {
+				noError = parseATBody(object);
+			} catch (ArcheTextOperationException e) {
+				addErrorMessage("Error in expression: "+e.getLocalizedMessage());
+				noError = false;
+			}
+			
+			if (!noError)
+				throwErrors();
+			else if (flatten)
+				object.flatten();
+		}
+		
+		// finds an object by type and name in the current root, or the resolver.
+		private ArcheTextObject findObject(String type, String name)
+		{
+			ArcheTextObject out = currentRoot.get(type, name);
+			if (out == null && resolver != null)
+				out = resolver.resolve(type, name);
+			return out;
+		}
+		
+		// adds an object to the streaming window, dropping the oldest object from the root if full.
+		private void addToWindow(ArcheTextRoot targetRoot, ArcheTextObject object)
+		{
+			window.add(object);
+			while (window.size() > windowSize)
 			{
-				String[] errors = getErrorMessages();
-				if (errors.length > 0)
+				ArcheTextObject evicted = window.poll();
+				// only remove if it was not replaced by a later object of the same type and name.
+				if (targetRoot.get(evicted.getType(), evicted.getIdentity()) == evicted)
+					targetRoot.remove(evicted);
+			}
+		}
+		
+		// throws the accumulated errors, if any.
+		private void throwErrors()
+		{
+			String[] errors = getErrorMessages();
+			if (errors.length > 0)
+			{
+				StringBuilder sb = new StringBuilder();
+				for (int i = 0; i < errors.length; i++)
 				{
-					StringBuilder sb = new StringBuilder();
-					for (int i = 0; i < errors.length; i++)
-					{
-						sb.append(errors[i]);
-						if (i < errors.length-1)
-							sb.append('\n');
-					}
-					throw new ArcheTextParseException(sb.toString());
+					sb.append(errors[i]);
+					if (i < errors.length-1)
+						sb.append('\n');
 				}
+				throw new ArcheTextParseException(sb.toString());
 			}
-			
 		}
 		
 		/*
@@ -528,7 +1109,9 @@ public final class ArcheTextReader
 				currentObjectType = null;
 				return true;
 			}
-			else if (!parseATDeclaration())
+			
+			String streamName = currentToken().getStreamName();
+			if (!parseATDeclaration())
 				return false;
 			else
 			{
@@ -540,13 +1123,43 @@ public final class ArcheTextReader
 				for (ArcheTextObject parent : currentObjectParents)
 					currentObject.addParent(parent);
 				
-				if (!parseATBody(currentObject))
-					return false;
+				if (handler != null)
+				{
+					List<ArcheTextObject> parents = currentObjectParents.isEmpty() 
+						? Collections.<ArcheTextObject>emptyList() 
+						: Collections.unmodifiableList(new ArrayList<>(currentObjectParents));
+					handler.startObject(currentObject.getType(), currentObject.getIdentity(), parents);
+				}
 				
-				if (currentObjectParentsFlatten)
-					currentObject.flatten();
+				if (currentRoot.isLazyLoading() && currentType(Kernel.TYPE_LBRACE, Kernel.TYPE_LPAREN))
+				{
+					if (!skimATBody(currentObject, currentObjectParentsFlatten))
+						return false;
+				}
+				else
+				{
+					if (!parseATBody(currentObject))
+						return false;
+					
+					if (currentObjectParentsFlatten)
+						currentObject.flatten();
+				}
 
-				targetRoot.add(currentObject);
+				if (sink == null || retainObjects)
+				{
+					targetRoot.add(currentObject);
+					if (targetRoot.getDependencyIndex() != null)
+						targetRoot.getDependencyIndex().addObject(currentObject, streamName, currentObjectParents);
+				}
+				if (handler != null)
+				{
+					handler.endObject(currentObject);
+					addToWindow(targetRoot, currentObject);
+				}
+				if (sink != null)
+					sink.accept(currentObject);
+				if (metrics != null)
+					metrics.onObject(streamName);
 				currentObjectType = null;
 				currentObjectName = null;
 				return true;
@@ -730,7 +1343,9 @@ public final class ArcheTextReader
 				if (!parseATDeclaration())
 					return false;
 				
-				ArcheTextObject objectRef = currentRoot.get(currentObjectType, currentObjectName);
+				if (metrics != null)
+					metrics.onParentLookup();
+				ArcheTextObject objectRef = findObject(currentObjectType, currentObjectName);
 				
 				if (objectRef == null)
 				{
@@ -761,7 +1376,9 @@ public final class ArcheTextReader
 				if (!parseATDeclaration())
 					return false;
 				
-				ArcheTextObject objectRef = currentRoot.get(currentObjectType, currentObjectName);
+				if (metrics != null)
+					metrics.onParentLookup();
+				ArcheTextObject objectRef = findObject(currentObjectType, currentObjectName);
 				
 				if (objectRef == null)
 				{
@@ -796,6 +1413,7 @@ public final class ArcheTextReader
 					addErrorMessage("Expected ',' or end of object declaration ('}').");
 					return false;
 				}
+				object.trimFields();
 				return true;
 			}
 			else if (currentType(Kernel.TYPE_LPAREN))
@@ -817,6 +1435,7 @@ public final class ArcheTextReader
 					addErrorMessage("Expected ',' or end of prototyped object declaration (')').");
 					return false;
 				}
+				object.trimFields();
 				return true;
 			}
 			else if (matchType(Kernel.TYPE_SEMICOLON))
@@ -832,6 +1451,126 @@ public final class ArcheTextReader
 		}
 		
 		
+		/*
+		 * Skims an <ATBody> that starts with "{" or "(" without evaluating it, and
+		 * defers the real parse to the first access of the object.
+		 * Everything that depends on parser state at this point in the stream is checked or resolved 
+		 * now (object references, prototype existence) so that the deferred parse has the same result.
+		 */
+		private boolean skimATBody(ArcheTextObject object, boolean flatten)
+		{
+			int openType = currentToken().getType();
+			int closeType;
+			String closeError;
+			if (openType == Kernel.TYPE_LBRACE)
+			{
+				closeType = Kernel.TYPE_RBRACE;
+				closeError = "Expected ',' or end of object declaration ('}').";
+			}
+			else
+			{
+				if (!prototypes.containsKey(object.getType()))
+				{
+					addErrorMessage("Prototyped structure has no matching prototype delcaration for type \""+object.getType()+"\".");
+					return false;
+				}
+				closeType = Kernel.TYPE_RPAREN;
+				closeError = "Expected ',' or end of prototyped object declaration (')').";
+			}
+			
+			if (bodyRecorder == null)
+				bodyRecorder = new BodyRecorder();
+			BodyRecorder tokens = bodyRecorder;
+			tokens.reset();
+			List<ArcheTextObject> references = null;
+			int depth = 0;
+			do {
+				Lexer.Token token = currentToken();
+				if (token == null)
+				{
+					addErrorMessage(closeError);
+					return false;
+				}
+				
+				tokens.add(token);
+				nextToken();
+				
+				if (token.getType() == openType)
+					depth++;
+				else if (token.getType() == closeType)
+					depth--;
+				else if (token.getType() == Kernel.TYPE_AT)
+				{
+					ArcheTextObject objectRef = skimReference(object, tokens);
+					if (objectRef == null)
+						return false;
+					if (references == null)
+						references = new ArrayList<>(2);
+					references.add(objectRef);
+				}
+				else if (token.getType() == Kernel.TYPE_IDENTIFIER && currentType(Kernel.TYPE_LPAREN) && !prototypes.containsKey(token.getLexeme()))
+				{
+					addErrorMessage("Prototyped structure has no matching prototype delcaration for type \""+token.getLexeme()+"\".");
+					return false;
+				}
+			} while (depth > 0);
+			
+			object.setBodyLoader(new DeferredBody(prototypes, tokens, references != null ? references : Collections.<ArcheTextObject>emptyList(), flatten));
+			return true;
+		}
+		
+		/*
+		 * Skims the rest of an object reference after "@", and resolves it.
+		 *		"{" <ATDeclaration> "}"
+		 * Returns the referenced object, or null on error.
+		 */
+		private ArcheTextObject skimReference(ArcheTextObject object, BodyRecorder tokens)
+		{
+			if (!currentType(Kernel.TYPE_LBRACE))
+			{
+				addErrorMessage("Expected '{' after object reference operator.");
+				return null;
+			}
+			tokens.add(currentToken());
+			nextToken();
+			
+			if (!currentType(Kernel.TYPE_IDENTIFIER))
+			{
+				addErrorMessage("Expected ArcheText object type or prototype clause start.");
+				return null;
+			}
+			String type = currentToken().getLexeme();
+			tokens.add(currentToken());
+			nextToken();
+			
+			String name = null;
+			if (currentType(Kernel.TYPE_IDENTIFIER, Kernel.TYPE_STRING, Kernel.TYPE_NUMBER))
+			{
+				name = currentToken().getLexeme();
+				tokens.add(currentToken());
+				nextToken();
+			}
+			
+			if (!currentType(Kernel.TYPE_RBRACE))
+			{
+				addErrorMessage("Expected '}' after object reference.");
+				return null;
+			}
+			tokens.add(currentToken());
+			nextToken();
+			
+			ArcheTextObject objectRef = findObject(type, name);
+			if (objectRef == null)
+			{
+				addErrorMessage("Parent object ("+type+(name != null ? " \""+name+"\"" : "")+") not declared or found.");
+				return null;
+			}
+			
+			if (currentRoot.getDependencyIndex() != null)
+				currentRoot.getDependencyIndex().addReference(object, objectRef);
+			return objectRef;
+		}
+		
 		/*
 		 *	<ATFieldList> :=
 		 *		<IDENTIFIER> <AssignmentOperator> <Expression> ";" <ATFieldList>
@@ -854,10 +1593,14 @@ public final class ArcheTextReader
 				Combinator combinator = Kernel.ASSIGNMENTOPERATOR_MAP.get(operator);
 				nextToken();
 				
+				if (object == currentObject)
+					startField(member);
 				if (!parseValue())
 					return false;
 				
-				object.setField(member, combinator, currentValue);
+				object.setField(member, combinator, currentValue, endField(object));
+				if (handler != null && object == currentObject)
+					handler.field(member, combinator, currentValue);
 				
 				if (!matchType(Kernel.TYPE_SEMICOLON))
 				{
@@ -871,6 +1614,26 @@ public final class ArcheTextReader
 			return true;
 		}
 
+		// marks the start of the assignment of a field of the current object.
+		private void startField(String name)
+		{
+			currentField = name;
+			currentFieldSelfLocal = false;
+		}
+		
+		// marks the end of the assignment of a field, returns the expression to keep for it.
+		private ArcheTextExpression endField(ArcheTextObject object)
+		{
+			if (object != currentObject)
+				return currentExpression;
+			
+			// a reference to a local value that this assignment replaces cannot be evaluated again.
+			ArcheTextExpression out = currentFieldSelfLocal ? null : currentExpression;
+			currentField = null;
+			currentFieldSelfLocal = false;
+			return out;
+		}
+
 		/*
 		 *	<ATPrototypeFieldList> := <Value> ("," <Value>....)
 		 */
@@ -881,10 +1644,14 @@ public final class ArcheTextReader
 			{
 				String field = fieldIterator.next();
 				
+				if (object == currentObject)
+					startField(field);
 				if (!parseValue())
 					return false;
 				
-				object.setField(field, Combinator.SET, currentValue);
+				object.setField(field, Combinator.SET, currentValue, endField(object));
+				if (handler != null && object == currentObject)
+					handler.field(field, Combinator.SET, currentValue);
 				
 				// If comma not matched, abandon read.
 				if (fieldIterator.hasNext())
@@ -925,7 +1692,15 @@ public final class ArcheTextReader
 					return false;
 				}
 
-				ArcheTextObject objectRef = currentRoot.get(currentObjectType, currentObjectName);
+				// deferred bodies have their references resolved already.
+				if (objectReferences != null)
+				{
+					currentValue = new ArcheTextValue(Type.OBJECT, objectReferences.poll());
+					currentExpression = null;
+					return true;
+				}
+				
+				ArcheTextObject objectRef = findObject(currentObjectType, currentObjectName);
 				
 				if (objectRef == null)
 				{
@@ -933,7 +1708,11 @@ public final class ArcheTextReader
 					return false;
 				}
 
+				if (currentObject != null && currentRoot.getDependencyIndex() != null)
+					currentRoot.getDependencyIndex().addReference(currentObject, objectRef);
+
 				currentValue = new ArcheTextValue(Type.OBJECT, objectRef);
+				currentExpression = null;
 				
 				return true;
 			}
@@ -948,8 +1727,10 @@ public final class ArcheTextReader
 					addErrorMessage("Expected ',' or end of object declaration ('}').");
 					return false;
 				}
+				object.trimFields();
 
 				currentValue = new ArcheTextValue(Type.OBJECT, object);
+				currentExpression = object.hasExpressions() ? new ArcheTextExpression.ObjectValue(object) : null;
 				
 				return true;
 			}
@@ -962,12 +1743,13 @@ public final class ArcheTextReader
 		 *		<Value> <ListBodyPrime>
 		 *		[e]
 		 */
-		private boolean parseListBody(List<ArcheTextValue> list)
+		private boolean parseListBody(List<ArcheTextValue> list, List<ArcheTextExpression> expressions)
 		{
 			if (parseValue())
 			{
 				list.add(currentValue);
-				return parseListBodyPrime(list);
+				expressions.add(currentExpression);
+				return parseListBodyPrime(list, expressions);
 			}
 			
 			return true;
@@ -979,14 +1761,15 @@ public final class ArcheTextReader
 		 *		"," <Value> <SetBodyPrime>
 		 *		[e]
 		 */
-		private boolean parseListBodyPrime(List<ArcheTextValue> list)
+		private boolean parseListBodyPrime(List<ArcheTextValue> list, List<ArcheTextExpression> expressions)
 		{
 			if (matchType(Kernel.TYPE_COMMA))
 			{
 				if (!parseValue())
 					return false;
 				list.add(currentValue);
-				return parseListBodyPrime(list);
+				expressions.add(currentExpression);
+				return parseListBodyPrime(list, expressions);
 			}
 			
 			return true;
@@ -998,12 +1781,14 @@ public final class ArcheTextReader
 		 *		<Value> <SetBodyPrime>
 		 *		[e]
 		 */
-		private boolean parseSetBody(Set<ArcheTextValue> set)
+		private boolean parseSetBody(Set<ArcheTextValue> set, List<ArcheTextValue> values, List<ArcheTextExpression> expressions)
 		{
 			if (parseValue())
 			{
 				set.add(currentValue);
-				return parseSetBodyPrime(set);
+				values.add(currentValue);
+				expressions.add(currentExpression);
+				return parseSetBodyPrime(set, values, expressions);
 			}
 			
 			return true;
@@ -1015,14 +1800,16 @@ public final class ArcheTextReader
 		 *		"," <Value> <SetBodyPrime>
 		 *		[e]
 		 */
-		private boolean parseSetBodyPrime(Set<ArcheTextValue> set)
+		private boolean parseSetBodyPrime(Set<ArcheTextValue> set, List<ArcheTextValue> values, List<ArcheTextExpression> expressions)
 		{
 			if (matchType(Kernel.TYPE_COMMA))
 			{
 				if (!parseValue())
 					return false;
 				set.add(currentValue);
-				return parseSetBodyPrime(set);
+				values.add(currentValue);
+				expressions.add(currentExpression);
+				return parseSetBodyPrime(set, values, expressions);
 			}
 			return true;
 		}
@@ -1034,13 +1821,42 @@ public final class ArcheTextReader
 		 */
 		private boolean parseExpression()
 		{
-			// Expression value stack.
-			Deque<ArcheTextValue> valueStack = new LinkedList<ArcheTextValue>();
-			// Expression operator stack.
-			Deque<Operator> operatorStack = new LinkedList<Operator>();
-
-			// was the last read token a value?
+			if (metrics != null)
+				metrics.onExpression();
+			
+			// fast path: a lone literal does not need the stacks.
 			boolean lastWasValue = false;
+			if (currentToken() != null && isValidLiteralType())
+			{
+				tokenToValue();
+				currentExpression = null;
+				if (currentToken() == null || !(isBinaryOperatorType() || isValidLiteralType() || currentType(
+					Kernel.TYPE_IDENTIFIER, Kernel.TYPE_LBRACE, Kernel.TYPE_LBRACK, Kernel.TYPE_LANGLEBRACK, Kernel.TYPE_LPAREN
+				)))
+					return true;
+				lastWasValue = true;
+			}
+			
+			// nested expressions share the stacks above their own base.
+			int valueBase = valueStackSize;
+			int operatorBase = operatorStackSize;
+			try {
+				if (lastWasValue)
+					pushValue(currentValue, null);
+				return parseExpression(valueBase, operatorBase, lastWasValue);
+			} finally {
+				Arrays.fill(valueStack, valueBase, valueStackSize, null);
+				Arrays.fill(expressionStack, valueBase, valueStackSize, null);
+				valueStackSize = valueBase;
+				operatorStackSize = operatorBase;
+			}
+		}
+		
+		/*
+		 * Parses the rest of an infix expression on the parser's stacks.
+		 */
+		private boolean parseExpression(int valueBase, int operatorBase, boolean lastWasValue)
+		{
 			boolean keepGoing = true;
 			
 			while (keepGoing)
@@ -1078,21 +1894,31 @@ public final class ArcheTextReader
 							addErrorMessage("Expected ',' or end of prototyped object declaration (')').");
 							return false;
 						}
+						object.trimFields();
 						
-						valueStack.push(new ArcheTextValue(Type.OBJECT, object));
+						pushValue(new ArcheTextValue(Type.OBJECT, object), object.hasExpressions() ? new ArcheTextExpression.ObjectValue(object) : null);
 					}
 					else
 					{
 						ArcheTextValue val = currentObject.getField(identname);
 						if (val != null)
-							val = val.copy();
+							val = val.share();
 						else
 						{
 							addErrorMessage("Expression error - no such field \""+identname+"\" in expression.");
 							return false;
 						}
 
-						valueStack.push(val);
+						// the field being assigned refers to its value before this assignment.
+						boolean inherited = false;
+						if (identname.equals(currentField))
+						{
+							if (currentObject.getLocalFieldIndex(identname) < 0)
+								inherited = true;
+							else
+								currentFieldSelfLocal = true;
+						}
+						pushValue(val, new ArcheTextExpression.FieldReference(identname, inherited));
 					}
 					
 					lastWasValue = true;
@@ -1114,8 +1940,9 @@ public final class ArcheTextReader
 						addErrorMessage("Expected end of object declaration ('}').");
 						return false;
 					}
+					object.trimFields();
 
-					valueStack.push(new ArcheTextValue(Type.OBJECT, object));
+					pushValue(new ArcheTextValue(Type.OBJECT, object), object.hasExpressions() ? new ArcheTextExpression.ObjectValue(object) : null);
 					lastWasValue = true;
 				}
 				else if (matchType(Kernel.TYPE_LBRACK))
@@ -1127,10 +1954,11 @@ public final class ArcheTextReader
 					}
 					
 					List<ArcheTextValue> list = new ArrayList<ArcheTextValue>(8); 
+					List<ArcheTextExpression> expressions = new ArrayList<ArcheTextExpression>(8);
 
 					if (!matchType(Kernel.TYPE_RBRACK))
 					{
-						if (!parseListBody(list))
+						if (!parseListBody(list, expressions))
 							return false;
 						
 						if (!matchType(Kernel.TYPE_RBRACK))
@@ -1140,7 +1968,7 @@ public final class ArcheTextReader
 						}
 					}
 
-					valueStack.push(new ArcheTextValue(Type.LIST, list));
+					pushValue(new ArcheTextValue(Type.LIST, ArcheTextNumericList.pack(list)), collectionExpression(false, expressions, list));
 					lastWasValue = true;
 				}
 				else if (matchType(Kernel.TYPE_LANGLEBRACK))
@@ -1152,10 +1980,12 @@ public final class ArcheTextReader
 					}
 					
 					Set<ArcheTextValue> set = new HashSet<ArcheTextValue>(); 
+					List<ArcheTextValue> values = new ArrayList<ArcheTextValue>(8);
+					List<ArcheTextExpression> expressions = new ArrayList<ArcheTextExpression>(8);
 					
 					if (!matchType(Kernel.TYPE_RANGLEBRACK))
 					{
-						if (!parseSetBody(set))
+						if (!parseSetBody(set, values, expressions))
 							return false;
 						
 						if (!matchType(Kernel.TYPE_RANGLEBRACK))
@@ -1165,7 +1995,7 @@ public final class ArcheTextReader
 						}
 					}
 
-					valueStack.push(new ArcheTextValue(Type.SET, set));
+					pushValue(new ArcheTextValue(Type.SET, set), collectionExpression(true, expressions, values));
 					lastWasValue = true;
 				}
 				else if (matchType(Kernel.TYPE_LPAREN))
@@ -1185,7 +2015,7 @@ public final class ArcheTextReader
 						return false;
 					}
 
-					valueStack.push(currentValue);
+					pushValue(currentValue, currentExpression);
 					lastWasValue = true;
 				}
 				else if (isValidLiteralType())
@@ -1197,7 +2027,7 @@ public final class ArcheTextReader
 					}
 					
 					tokenToValue();
-					valueStack.push(currentValue);
+					pushValue(currentValue, null);
 					lastWasValue = true;
 				}
 				else if (lastWasValue)
@@ -1250,10 +2080,10 @@ public final class ArcheTextReader
 						
 						nextToken();
 
-						if (!operatorReduce(operatorStack, valueStack, nextOperator))
+						if (!operatorReduce(valueBase, operatorBase, nextOperator))
 							return false;
 						
-						operatorStack.push(nextOperator);
+						pushOperator(nextOperator);
 						lastWasValue = false;
 					}
 					else // end on a value
@@ -1266,16 +2096,16 @@ public final class ArcheTextReader
 					switch (currentToken().getType())
 					{
 						case Kernel.TYPE_MINUS:
-							operatorStack.push(Operator.NEGATE);
+							pushOperator(Operator.NEGATE);
 							break;
 						case Kernel.TYPE_PLUS:
-							operatorStack.push(Operator.ABSOLUTE);
+							pushOperator(Operator.ABSOLUTE);
 							break;
 						case Kernel.TYPE_BITNOT:
-							operatorStack.push(Operator.BITNOT);
+							pushOperator(Operator.BITNOT);
 							break;
 						case Kernel.TYPE_NOT:
-							operatorStack.push(Operator.NOT);
+							pushOperator(Operator.NOT);
 							break;
 						default:
 							throw new ArcheTextParseException("Internal error - unexpected unary operator miss.");
@@ -1293,43 +2123,45 @@ public final class ArcheTextReader
 			}
 			
 			// end of expression - reduce.
-			while (!operatorStack.isEmpty())
+			while (operatorStackSize > operatorBase)
 			{
-				if (!expressionReduce(operatorStack, valueStack))
+				if (!expressionReduce(valueBase, operatorBase))
 					return false;
 			}
 			
-			if (valueStack.isEmpty())
+			if (valueStackSize == valueBase)
 			{
 				addErrorMessage("Expected valid expression.");
 				return false;
 			}
 
-			currentValue = valueStack.pollFirst();
+			currentExpression = expressionStack[valueStackSize - 1];
+			currentValue = popValue();
 			return true;
 		}
 
 		// keeps reducing until the input operator is of greater precedence.
-		private boolean operatorReduce(Deque<Operator> operatorStack, Deque<ArcheTextValue> valueStack, Operator operator)
+		private boolean operatorReduce(int valueBase, int operatorBase, Operator operator)
 		{
-			Operator top = operatorStack.peek();
-			while (top != null && (top.precedence > operator.precedence || (top.precedence == operator.precedence && !operator.rightAssociative)))
+			while (operatorStackSize > operatorBase)
 			{
-				if (!expressionReduce(operatorStack, valueStack))
+				Operator top = operatorStack[operatorStackSize - 1];
+				if (!(top.precedence > operator.precedence || (top.precedence == operator.precedence && !operator.rightAssociative)))
+					break;
+				if (!expressionReduce(valueBase, operatorBase))
 					return false;
-				top = operatorStack.peek();
 			}
 			
 			return true;
 		}
 		
 		// Performs an operator reduction.
-		private boolean expressionReduce(Deque<Operator> operatorStack, Deque<ArcheTextValue> valueStack)
+		private boolean expressionReduce(int valueBase, int operatorBase)
 		{
-			if (operatorStack.isEmpty())
+			if (operatorStackSize == operatorBase)
 				throw new ArcheTextParseException("Internal error - operator stack must have one operator in it.");
 
-			Operator operator = operatorStack.pollFirst();
+			Operator operator = operatorStack[--operatorStackSize];
 			
 			switch (operator)
 			{
@@ -1338,32 +2170,37 @@ public final class ArcheTextReader
 				case BITNOT:
 				case ABSOLUTE:
 				{
-					if (valueStack.size() < 1)
+					if (valueStackSize - valueBase < 1)
 					{
 						addErrorMessage("Bad expression - operator requires at least one operand.");
 						return false;
 					}
 					
-					ArcheTextValue value = valueStack.pollFirst();
+					ArcheTextExpression node = expressionStack[valueStackSize - 1];
+					ArcheTextValue value = popValue();
 					
+					ArcheTextExpression.UnaryOperator unary;
 					switch (operator)
 					{
 						case NOT:
-							valueStack.push(value.not());
+							unary = ArcheTextExpression.UnaryOperator.NOT;
 							break;
 						case NEGATE:
-							valueStack.push(value.negate());
+							unary = ArcheTextExpression.UnaryOperator.NEGATE;
 							break;
 						case BITNOT:
-							valueStack.push(value.bitwiseNot());
+							unary = ArcheTextExpression.UnaryOperator.BITNOT;
 							break;
 						case ABSOLUTE:
-							valueStack.push(value.absolute());
+							unary = ArcheTextExpression.UnaryOperator.ABSOLUTE;
 							break;
 						default:
 							throw new ArcheTextParseException("Internal error - unary operator state should not have been reached.");
 					}
 					
+					// constant operands fold into a constant.
+					pushValue(unary.apply(value), node != null ? new ArcheTextExpression.Unary(unary, node) : null);
+					
 					return true;
 				}
 				
@@ -1380,57 +2217,67 @@ public final class ArcheTextReader
 				case RSHIFT:
 				case RSHIFTPAD:
 				{
-					if (valueStack.size() < 2)
+					if (valueStackSize - valueBase < 2)
 					{
 						addErrorMessage("Bad expression - operator requires at least two operands.");
 						return false;
 					}
 
-					ArcheTextValue operand = valueStack.pollFirst();
-					ArcheTextValue source = valueStack.pollFirst();
+					ArcheTextExpression operandNode = expressionStack[valueStackSize - 1];
+					ArcheTextValue operand = popValue();
+					ArcheTextExpression sourceNode = expressionStack[valueStackSize - 1];
+					ArcheTextValue source = popValue();
+
+					Combinator combinator;
 
 					switch (operator)
 					{
 						case ADD:
-							valueStack.push(Combinator.ADD.combine(operand, source));
+							combinator = Combinator.ADD;
 							break;
 						case SUBTRACT:
-							valueStack.push(Combinator.SUBTRACT.combine(operand, source));
+							combinator = Combinator.SUBTRACT;
 							break;
 						case MULTIPLY:
-							valueStack.push(Combinator.MULTIPLY.combine(operand, source));
+							combinator = Combinator.MULTIPLY;
 							break;
 						case DIVIDE:
-							valueStack.push(Combinator.DIVISION.combine(operand, source));
+							combinator = Combinator.DIVISION;
 							break;
 						case MODULO:
-							valueStack.push(Combinator.MODULO.combine(operand, source));
+							combinator = Combinator.MODULO;
 							break;
 						case POWER:
-							valueStack.push(Combinator.POWER.combine(operand, source));
+							combinator = Combinator.POWER;
 							break;
 						case AND:
-							valueStack.push(Combinator.BITWISEAND.combine(operand, source));
+							combinator = Combinator.BITWISEAND;
 							break;
 						case OR:
-							valueStack.push(Combinator.BITWISEOR.combine(operand, source));
+							combinator = Combinator.BITWISEOR;
 							break;
 						case XOR:
-							valueStack.push(Combinator.BITWISEXOR.combine(operand, source));
+							combinator = Combinator.BITWISEXOR;
 							break;
 						case LSHIFT:
-							valueStack.push(Combinator.LEFTSHIFT.combine(operand, source));
+							combinator = Combinator.LEFTSHIFT;
 							break;
 						case RSHIFT:
-							valueStack.push(Combinator.RIGHTSHIFT.combine(operand, source));
+							combinator = Combinator.RIGHTSHIFT;
 							break;
 						case RSHIFTPAD:
-							valueStack.push(Combinator.RIGHTPADDINGSHIFT.combine(operand, source));
+							combinator = Combinator.RIGHTPADDINGSHIFT;
 							break;
 						default:
 							throw new ArcheTextParseException("Internal error - binary operator state should not have been reached.");
 					}
 					
+					// constant operands fold into a constant.
+					ArcheTextExpression node = null;
+					if (operandNode != null || sourceNode != null)
+						node = new ArcheTextExpression.Binary(combinator, ArcheTextExpression.nodeFor(sourceNode, source), ArcheTextExpression.nodeFor(operandNode, operand));
+					pushValue(combinator.combine(operand, source), node);
+					
 					return true;
 				}
 				
@@ -1440,6 +2287,44 @@ public final class ArcheTextReader
 			}
 		}
 		
+		// pushes a value and its expression (null if constant) onto the expression value stack.
+		private void pushValue(ArcheTextValue value, ArcheTextExpression expression)
+		{
+			if (valueStackSize == valueStack.length)
+			{
+				valueStack = Arrays.copyOf(valueStack, valueStack.length * 2);
+				expressionStack = Arrays.copyOf(expressionStack, expressionStack.length * 2);
+			}
+			expressionStack[valueStackSize] = expression;
+			valueStack[valueStackSize++] = value;
+		}
+		
+		// pops a value off of the expression value stack.
+		private ArcheTextValue popValue()
+		{
+			ArcheTextValue out = valueStack[--valueStackSize];
+			valueStack[valueStackSize] = null;
+			expressionStack[valueStackSize] = null;
+			return out;
+		}
+		
+		// returns an expression for a list or set, or null if all of its elements are constant.
+		private ArcheTextExpression collectionExpression(boolean set, List<ArcheTextExpression> expressions, List<ArcheTextValue> values)
+		{
+			for (ArcheTextExpression e : expressions)
+				if (e != null)
+					return new ArcheTextExpression.Collection(set, expressions, values);
+			return null;
+		}
+		
+		// pushes an operator onto the expression operator stack.
+		private void pushOperator(Operator operator)
+		{
+			if (operatorStackSize == operatorStack.length)
+				operatorStack = Arrays.copyOf(operatorStack, operatorStack.length * 2);
+			operatorStack[operatorStackSize++] = operator;
+		}
+		
 		// Token to value.
 		private boolean tokenToValue()
 		{
@@ -1463,19 +2348,19 @@ public final class ArcheTextReader
 			}
 			else if (currentType(Kernel.TYPE_TRUE))
 			{
-				currentValue = (new ArcheTextValue(Type.BOOLEAN, true));
+				currentValue = ArcheTextValue.TRUE;
 				nextToken();
 				return true;
 			}
 			else if (currentType(Kernel.TYPE_FALSE))
 			{
-				currentValue = (new ArcheTextValue(Type.BOOLEAN, false));
+				currentValue = ArcheTextValue.FALSE;
 				nextToken();
 				return true;
 			}
 			else if (currentType(Kernel.TYPE_NULL))
 			{
-				currentValue = (new ArcheTextValue(Type.NULL, null));
+				currentValue = ArcheTextValue.NULL;
 				nextToken();
 				return true;
 			}
@@ -101,6 +101,14 @@ public class ArcheTextRoot
 
 	/** Object descendants by type. */
 	private HashMap<String, DescendantSet> descendants;
+	/** Dependency index, if any. */
+	private ArcheTextDependencyIndex dependencyIndex;
+	/** Reader metrics, if any. */
+	private ArcheTextMetrics metrics;
+	/** If true, object bodies are read on first access. */
+	private boolean lazyLoading;
+	/** If true, this root cannot be changed. */
+	private boolean readOnly;
 
 	/** 
 	 * Creates a new root. 
@@ -108,6 +116,105 @@ public class ArcheTextRoot
 	public ArcheTextRoot()
 	{
 		descendants = null;
+		dependencyIndex = null;
+		metrics = null;
+		lazyLoading = false;
+		readOnly = false;
+	}
+	
+	/**
+	 * Checks if this root is read-only.
+	 * @return true if so, false if not.
+	 * @see #makeReadOnly()
+	 */
+	public boolean isReadOnly()
+	{
+		return readOnly;
+	}
+	
+	/**
+	 * Makes this root read-only, so that it can be shared as a snapshot.
+	 * From then on, adding or removing objects or changing this root's settings throws an
+	 * {@link UnsupportedOperationException}, which includes reading more objects into it.
+	 * This cannot be undone. The objects in this root are not affected.
+	 */
+	public void makeReadOnly()
+	{
+		readOnly = true;
+	}
+	
+	/**
+	 * Checks if this root defers the reading of object bodies.
+	 * @return true if so, false if not.
+	 * @see #setLazyLoading(boolean)
+	 */
+	public boolean isLazyLoading()
+	{
+		return lazyLoading;
+	}
+	
+	/**
+	 * Sets if this root defers the reading of object bodies.
+	 * <p>
+	 * If true, objects read into this root by {@link ArcheTextReader} from then on only have their 
+	 * type, name, and parents read right away - the rest of the body is scanned for its extent and 
+	 * object references, and its fields are read and evaluated on the first access to the object's 
+	 * fields or parents. The resulting values are the same as if they were read right away.
+	 * <p>
+	 * Until then, each body is kept as packed tokens: a type and line number per token, plus the text of its lexemes.
+	 * This is usually smaller than the values that the body reads to.
+	 * <p>
+	 * Syntax and expression errors inside deferred bodies are thrown as 
+	 * {@link com.blackrook.archetext.exception.ArcheTextParseException}s on first access instead of when read.
+	 * @param lazyLoading true to defer, false to read bodies right away.
+	 * @throws UnsupportedOperationException if this root is read-only.
+	 */
+	public void setLazyLoading(boolean lazyLoading)
+	{
+		checkWritable();
+		this.lazyLoading = lazyLoading;
+	}
+	
+	/**
+	 * Gets the dependency index attached to this root, if any.
+	 * @return the attached index, or null if no index is attached.
+	 */
+	public ArcheTextDependencyIndex getDependencyIndex()
+	{
+		return dependencyIndex;
+	}
+	
+	/**
+	 * Attaches a dependency index to this root.
+	 * Objects read into this root by {@link ArcheTextReader} from then on are recorded in the index.
+	 * @param dependencyIndex the index to attach, or null to detach the current one.
+	 * @throws UnsupportedOperationException if this root is read-only.
+	 */
+	public void setDependencyIndex(ArcheTextDependencyIndex dependencyIndex)
+	{
+		checkWritable();
+		this.dependencyIndex = dependencyIndex;
+	}
+	
+	/**
+	 * Gets the reader metrics attached to this root, if any.
+	 * @return the attached metrics, or null if no metrics are attached.
+	 */
+	public ArcheTextMetrics getMetrics()
+	{
+		return metrics;
+	}
+	
+	/**
+	 * Attaches reader metrics to this root.
+	 * Reads into this root by {@link ArcheTextReader} from then on are measured and added to the metrics.
+	 * @param metrics the metrics to attach, or null to detach the current ones.
+	 * @throws UnsupportedOperationException if this root is read-only.
+	 */
+	public void setMetrics(ArcheTextMetrics metrics)
+	{
+		checkWritable();
+		this.metrics = metrics;
 	}
 	
 	/**
@@ -210,9 +317,11 @@ public class ArcheTextRoot
 	/**
 	 * Adds an object.
 	 * @param object the object to add.
+	 * @throws UnsupportedOperationException if this root is read-only.
 	 */
 	public void add(ArcheTextObject object)
 	{
+		checkWritable();
 		if (descendants == null)
 			descendants = new HashMap<String, ArcheTextRoot.DescendantSet>();
 		
@@ -221,6 +330,13 @@ public class ArcheTextRoot
 		if (set == null)
 			descendants.put(type, set = new DescendantSet());
 		
+		if (dependencyIndex != null)
+		{
+			ArcheTextObject replaced = set.get(object.getIdentity());
+			if (replaced != null && replaced != object)
+				dependencyIndex.removeObject(replaced);
+		}
+		
 		set.add(object.getIdentity(), object);
 	}
 	
@@ -228,9 +344,11 @@ public class ArcheTextRoot
 	 * Removes an ArcheText object from this root.
 	 * @param object the object to remove.
 	 * @return true if removed, false if not.
+	 * @throws UnsupportedOperationException if this root is read-only.
 	 */
 	public boolean remove(ArcheTextObject object)
 	{
+		checkWritable();
 		if (descendants == null)
 			return false;
 		
@@ -242,7 +360,9 @@ public class ArcheTextRoot
 		String name = object.getIdentity();
 		if (set.contains(name))
 		{
-			set.remove(name);
+			ArcheTextObject removed = set.remove(name);
+			if (dependencyIndex != null && removed != null)
+				dependencyIndex.removeObject(removed);
 			if (set.isEmpty())
 				descendants.remove(type);
 			return true;
@@ -254,4 +374,11 @@ public class ArcheTextRoot
 		return false;
 	}
 	
+	// throws an exception if this root is read-only.
+	private void checkWritable()
+	{
+		if (readOnly)
+			throw new UnsupportedOperationException("This root is read-only.");
+	}
+	
 }
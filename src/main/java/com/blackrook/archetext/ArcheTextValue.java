@@ -9,6 +9,8 @@ package com.blackrook.archetext;
 
 import java.lang.reflect.Array;
 import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
 import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
@@ -26,6 +28,10 @@ public final class ArcheTextValue
 {
 	/** Null value. */
 	public static final ArcheTextValue NULL = new ArcheTextValue(Type.NULL, null);
+	/** Boolean true value. */
+	public static final ArcheTextValue TRUE = new ArcheTextValue(Type.BOOLEAN, true);
+	/** Boolean false value. */
+	public static final ArcheTextValue FALSE = new ArcheTextValue(Type.BOOLEAN, false);
 	
 	/**
 	 * ArcheText value internal types.
@@ -104,6 +110,26 @@ public final class ArcheTextValue
 				ato.setField(String.valueOf(pair.getKey()), Combinator.SET, create(pair.getValue()));
 			return new ArcheTextValue(Type.OBJECT, ato);
 		}
+		else if (object instanceof long[])
+			return new ArcheTextValue(Type.LIST, new ArcheTextNumericList(((long[])object).clone()));
+		else if (object instanceof double[])
+			return new ArcheTextValue(Type.LIST, new ArcheTextNumericList(((double[])object).clone()));
+		else if (object instanceof int[])
+		{
+			int[] array = (int[])object;
+			long[] out = new long[array.length];
+			for (int i = 0; i < array.length; i++)
+				out[i] = array[i];
+			return new ArcheTextValue(Type.LIST, new ArcheTextNumericList(out));
+		}
+		else if (object instanceof float[])
+		{
+			float[] array = (float[])object;
+			double[] out = new double[array.length];
+			for (int i = 0; i < array.length; i++)
+				out[i] = array[i];
+			return new ArcheTextValue(Type.LIST, new ArcheTextNumericList(out));
+		}
 		else if (Utils.isArray(object))
 		{
 			List<ArcheTextValue> out = new ArrayList<ArcheTextValue>();
@@ -167,11 +193,15 @@ public final class ArcheTextValue
 					if (atype == null)
 						throw new ArcheTextConversionException((memberName != null ? "Member "+memberName : "Value") + " cannot be converted; member is list and target is not array typed.");
 					
-					Object newarray = Array.newInstance(atype, val.size());
-					for (int i = 0; i < val.size(); i++)
-						Array.set(newarray, i, val.get(i).createForType(String.format("%s[%d]", memberName, i), atype));
-						
-					return type.cast(newarray);
+					// packed numbers to primitives: direct copy.
+					if (val instanceof ArcheTextNumericList)
+					{
+						Object packed = ((ArcheTextNumericList)val).toArray(atype);
+						if (packed != null)
+							return type.cast(packed);
+					}
+					
+					return type.cast(createArray(memberName, val, atype));
 				}
 				else
 					throw new ClassCastException((memberName != null ? "Member "+memberName : "Value") + " cannot be converted; member is list and target is not array typed.");
@@ -189,15 +219,7 @@ public final class ArcheTextValue
 					if (atype == null)
 						throw new ArcheTextConversionException((memberName != null ? "Member "+memberName : "Value") + " cannot be converted; member is set and target is not array typed.");
 					
-					Object newarray = Array.newInstance(atype, val.size());
-					int i = 0;
-					for (ArcheTextValue v : val)
-					{
-						Array.set(newarray, i, v.createForType(String.format("%s[%d]", memberName, i), atype));
-						i++;
-					}
-						
-					return type.cast(newarray);
+					return type.cast(createArray(memberName, val, atype));
 				}
 				else
 					throw new ClassCastException((memberName != null ? "Member "+memberName : "Value") + " cannot be converted; member is set and target is not array typed.");
@@ -230,6 +252,135 @@ public final class ArcheTextValue
 		
 	}
 
+	// Converts the values of a list or set to an array.
+	// Common component types are filled directly, without reflection or boxing for values that are already the right type.
+	private static Object createArray(String memberName, Collection<ArcheTextValue> values, Class<?> atype)
+	{
+		int i = 0;
+		if (atype == Integer.TYPE)
+		{
+			int[] out = new int[values.size()];
+			for (ArcheTextValue v : values)
+			{
+				if (v.type == Type.INTEGER)
+					out[i] = (int)v.getLong();
+				else if (v.type == Type.FLOAT)
+					out[i] = (int)v.getDouble();
+				else
+					out[i] = v.createElementForType(memberName, i, Integer.TYPE);
+				i++;
+			}
+			return out;
+		}
+		else if (atype == Long.TYPE)
+		{
+			long[] out = new long[values.size()];
+			for (ArcheTextValue v : values)
+			{
+				if (v.type == Type.INTEGER)
+					out[i] = v.getLong();
+				else if (v.type == Type.FLOAT)
+					out[i] = (long)v.getDouble();
+				else
+					out[i] = v.createElementForType(memberName, i, Long.TYPE);
+				i++;
+			}
+			return out;
+		}
+		else if (atype == Float.TYPE)
+		{
+			float[] out = new float[values.size()];
+			for (ArcheTextValue v : values)
+			{
+				if (v.type == Type.FLOAT)
+					out[i] = (float)v.getDouble();
+				else if (v.type == Type.INTEGER)
+					out[i] = (float)v.getLong();
+				else
+					out[i] = v.createElementForType(memberName, i, Float.TYPE);
+				i++;
+			}
+			return out;
+		}
+		else if (atype == Double.TYPE)
+		{
+			double[] out = new double[values.size()];
+			for (ArcheTextValue v : values)
+			{
+				if (v.type == Type.FLOAT)
+					out[i] = v.getDouble();
+				else if (v.type == Type.INTEGER)
+					out[i] = (double)v.getLong();
+				else
+					out[i] = v.createElementForType(memberName, i, Double.TYPE);
+				i++;
+			}
+			return out;
+		}
+		else if (atype == Boolean.TYPE)
+		{
+			boolean[] out = new boolean[values.size()];
+			for (ArcheTextValue v : values)
+			{
+				if (v.type == Type.BOOLEAN)
+					out[i] = v.getBoolean();
+				else
+					out[i] = v.createElementForType(memberName, i, Boolean.TYPE);
+				i++;
+			}
+			return out;
+		}
+		else if (atype == String.class)
+		{
+			String[] out = new String[values.size()];
+			for (ArcheTextValue v : values)
+			{
+				if (v.value instanceof String)
+					out[i] = (String)v.value;
+				else
+					out[i] = v.createElementForType(memberName, i, String.class);
+				i++;
+			}
+			return out;
+		}
+		else if (!atype.isPrimitive())
+		{
+			// objects and nested arrays.
+			Object[] out = (Object[])Array.newInstance(atype, values.size());
+			for (ArcheTextValue v : values)
+			{
+				out[i] = v.createElementForType(memberName, i, atype);
+				i++;
+			}
+			return out;
+		}
+		else
+		{
+			Object out = Array.newInstance(atype, values.size());
+			for (ArcheTextValue v : values)
+			{
+				Array.set(out, i, v.createElementForType(memberName, i, atype));
+				i++;
+			}
+			return out;
+		}
+	}
+	
+	// Converts an element of a list or set.
+	// Only lists, sets, and objects use a member name, so the element's name is only built for those.
+	private <T> T createElementForType(String memberName, int index, Class<T> type)
+	{
+		switch (this.type)
+		{
+			case LIST:
+			case SET:
+			case OBJECT:
+				return createForType(memberName + "[" + index + "]", type);
+			default:
+				return createForType(null, type);
+		}
+	}
+
 	@Override
 	public int hashCode()
 	{
@@ -292,6 +443,9 @@ public final class ArcheTextValue
 			}
 			case LIST:
 			{
+				// packed lists have no values to copy.
+				if (this.value instanceof ArcheTextNumericList)
+					return new ArcheTextValue(Type.LIST, this.value);
 				// append
 				List<ArcheTextValue> list = new ArrayList<ArcheTextValue>();
 				for (ArcheTextValue val : (List<ArcheTextValue>)this.value)
@@ -312,6 +466,17 @@ public final class ArcheTextValue
 
 	}
 	
+	/**
+	 * Returns a value to use in place of a copy of this one.
+	 * Values of every type but {@link Type#OBJECT} are never changed after they are created,
+	 * so they are shared as-is instead of copied. Objects can be changed, so they are still copied.
+	 * @return this value, or a copy if this is an object value.
+	 */
+	ArcheTextValue share()
+	{
+		return type == Type.OBJECT ? copy() : this;
+	}
+	
 	/**
 	 * @return the value type.
 	 */
@@ -321,11 +486,22 @@ public final class ArcheTextValue
 	}
 
 	/**
+	 * Gets the value itself.
+	 * Lists and sets are returned as unmodifiable views, since values can be shared between fields and objects.
 	 * @return the value itself.
 	 */
+	@SuppressWarnings("unchecked")
 	public Object getValue()
 	{
-		return value;
+		switch (type)
+		{
+			case LIST:
+				return Collections.unmodifiableList((List<ArcheTextValue>)value);
+			case SET:
+				return Collections.unmodifiableSet((Set<ArcheTextValue>)value);
+			default:
+				return value;
+		}
 	}
 	
 	/**
@@ -0,0 +1,356 @@
+/*******************************************************************************
+ * Copyright (c) 2016-2020 Black Rook Software
+ * This program and the accompanying materials are made available under the 
+ * terms of the GNU Lesser Public License v2.1 which accompanies this 
+ * distribution, and is available at 
+ * http://www.gnu.org/licenses/old-licenses/lgpl-2.1.html
+ ******************************************************************************/
+package com.blackrook.archetext;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.ClosedWatchServiceException;
+import java.nio.file.FileSystems;
+import java.nio.file.Path;
+import java.nio.file.StandardWatchEventKinds;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+
+import com.blackrook.archetext.struct.PreprocessorLexer;
+import com.blackrook.archetext.struct.PreprocessorLexer.Includer;
+
+/**
+ * A watcher that keeps an {@link ArcheTextRoot} in sync with the files that it was read from.
+ * <p>
+ * Every file that fed the root (the starting file plus all transitively included files) is watched
+ * via a {@link WatchService}. When one of them changes, the watcher waits for the changes to settle
+ * (debounce), re-reads everything into a brand new root on a background thread, and then publishes it.
+ * <p>
+ * Readers obtain the current root via {@link #getRoot()}, which never blocks on a reload.
+ * Published roots are read-only snapshots (see {@link ArcheTextRoot#makeReadOnly()}): they are never changed 
+ * by this watcher after they are published. The objects in them are shared by every caller, and should not be changed.
+ * If a reload fails, the previous root stays current.
+ * <p>
+ * The directory of each file is watched before the file is read, so that changes made during a reload are not missed.
+ * <p>
+ * Resources that are not files (such as <code>classpath:</code> includes) are not watched.
+ * @author Matthew Tropiano
+ */
+public class ArcheTextWatcher implements AutoCloseable
+{
+	/** Default debounce time in milliseconds. */
+	public static final long DEFAULT_DEBOUNCE_MILLIS = 250L;
+
+	private static final String CLASSPATH_PREFIX = "classpath:";
+
+	/**
+	 * Listener interface for reload events.
+	 */
+	public interface ReloadListener
+	{
+		/**
+		 * Called after a new root is published.
+		 * @param root the newly-published root.
+		 */
+		void onReload(ArcheTextRoot root);
+
+		/**
+		 * Called if a reload fails. The previous root is still current.
+		 * @param exception the exception that occurred.
+		 */
+		void onReloadError(Exception exception);
+	}
+
+	/** The starting file. */
+	private File file;
+	/** The includer to use to resolve includes. */
+	private Includer includer;
+	/** Debounce time in milliseconds. */
+	private long debounceMillis;
+
+	/** Current root. */
+	private AtomicReference<ArcheTextRoot> currentRoot;
+	/** The watch service. */
+	private WatchService watchService;
+	/** Watched directories to keys. */
+	private Map<Path, WatchKey> directoryKeys;
+	/** Watched files. */
+	private Set<Path> watchedFiles;
+	/** Watcher thread. */
+	private Thread watcherThread;
+	/** Reload listener. */
+	private volatile ReloadListener listener;
+	/** Closed flag. */
+	private volatile boolean closed;
+
+	/**
+	 * Creates a new watcher using the default includer and debounce time.
+	 * The root is read immediately, and watching begins on a background thread.
+	 * @param file the starting file to read from.
+	 * @throws IOException if the file can't be read or watched.
+	 * @throws NullPointerException if file is null.
+	 */
+	public ArcheTextWatcher(File file) throws IOException
+	{
+		this(file, PreprocessorLexer.DEFAULT_INCLUDER, DEFAULT_DEBOUNCE_MILLIS);
+	}
+
+	/**
+	 * Creates a new watcher using the default debounce time.
+	 * The root is read immediately, and watching begins on a background thread.
+	 * @param file the starting file to read from.
+	 * @param includer the includer to use to resolve "included" paths.
+	 * @throws IOException if the file can't be read or watched.
+	 * @throws NullPointerException if file or includer is null.
+	 */
+	public ArcheTextWatcher(File file, Includer includer) throws IOException
+	{
+		this(file, includer, DEFAULT_DEBOUNCE_MILLIS);
+	}
+
+	/**
+	 * Creates a new watcher.
+	 * The root is read immediately, and watching begins on a background thread.
+	 * @param file the starting file to read from.
+	 * @param includer the includer to use to resolve "included" paths.
+	 * @param debounceMillis the amount of quiet time (in milliseconds) to wait for after a change before reloading.
+	 * @throws IOException if the file can't be read or watched.
+	 * @throws NullPointerException if file or includer is null.
+	 * @throws IllegalArgumentException if debounceMillis is less than 0.
+	 */
+	public ArcheTextWatcher(File file, Includer includer, long debounceMillis) throws IOException
+	{
+		if (includer == null)
+			throw new NullPointerException("includer can not be null");
+		if (debounceMillis < 0)
+			throw new IllegalArgumentException("debounceMillis can not be less than 0");
+
+		this.file = file;
+		this.includer = includer;
+		this.debounceMillis = debounceMillis;
+		this.currentRoot = new AtomicReference<>();
+		this.directoryKeys = new HashMap<>();
+		this.watchedFiles = new HashSet<>();
+		this.listener = null;
+		this.closed = false;
+
+		this.watchService = FileSystems.getDefault().newWatchService();
+		try {
+			reload();
+		} catch (IOException | RuntimeException e) {
+			watchService.close();
+			throw e;
+		}
+
+		this.watcherThread = new Thread(this::watchLoop, "ArcheTextWatcher-" + file.getName());
+		this.watcherThread.setDaemon(true);
+		this.watcherThread.start();
+	}
+
+	/**
+	 * Gets the most recently published root.
+	 * This never blocks, even if a reload is in progress.
+	 * @return the current root, which is read-only.
+	 */
+	public ArcheTextRoot getRoot()
+	{
+		return currentRoot.get();
+	}
+
+	/**
+	 * Sets the listener that is notified of reloads.
+	 * @param listener the listener to use, or null for no listener.
+	 */
+	public void setReloadListener(ReloadListener listener)
+	{
+		this.listener = listener;
+	}
+
+	/**
+	 * @return the set of files currently being watched.
+	 */
+	public synchronized Set<File> getWatchedFiles()
+	{
+		Set<File> out = new HashSet<>();
+		for (Path p : watchedFiles)
+			out.add(p.toFile());
+		return out;
+	}
+
+	/**
+	 * Stops watching for changes. The last published root is still available.
+	 */
+	@Override
+	public void close()
+	{
+		closed = true;
+		try {
+			watchService.close();
+		} catch (IOException e) {
+			// Do nothing.
+		}
+	}
+
+	// Reads the root and its files, publishes it, and updates watched paths.
+	// Directories are registered before their files are read, and unused ones are dropped after.
+	private void reload() throws IOException
+	{
+		watchDirectory(toPath(file.getPath()));
+		TrackingIncluder tracker = new TrackingIncluder(includer);
+		ArcheTextRoot root = ArcheTextReader.read(file, tracker);
+		root.makeReadOnly();
+
+		Set<Path> files = new HashSet<>();
+		files.add(toPath(file.getPath()));
+		for (String path : tracker.resolvedPaths)
+		{
+			if (!path.startsWith(CLASSPATH_PREFIX))
+				files.add(toPath(path));
+		}
+
+		watchFiles(files);
+		currentRoot.set(root);
+	}
+
+	// Registers the directory of a file, if it is not already.
+	private synchronized void watchDirectory(Path file) throws IOException
+	{
+		Path dir = file.getParent();
+		if (dir != null && !directoryKeys.containsKey(dir))
+		{
+			directoryKeys.put(dir, dir.register(watchService,
+				StandardWatchEventKinds.ENTRY_CREATE,
+				StandardWatchEventKinds.ENTRY_MODIFY,
+				StandardWatchEventKinds.ENTRY_DELETE
+			));
+		}
+	}
+
+	// Registers the directories of a set of files, and drops directories that aren't used anymore.
+	private synchronized void watchFiles(Set<Path> files) throws IOException
+	{
+		Set<Path> directories = new HashSet<>();
+		for (Path p : files)
+		{
+			watchDirectory(p);
+			Path parent = p.getParent();
+			if (parent != null)
+				directories.add(parent);
+		}
+
+		Iterator<Map.Entry<Path, WatchKey>> it = directoryKeys.entrySet().iterator();
+		while (it.hasNext())
+		{
+			Map.Entry<Path, WatchKey> entry = it.next();
+			if (!directories.contains(entry.getKey()))
+			{
+				entry.getValue().cancel();
+				it.remove();
+			}
+		}
+
+		watchedFiles = files;
+	}
+
+	// Returns true if a key's pending events affect a watched file.
+	private synchronized boolean isRelevant(WatchKey key)
+	{
+		boolean out = false;
+		for (WatchEvent<?> event : key.pollEvents())
+		{
+			if (event.kind() == StandardWatchEventKinds.OVERFLOW)
+				out = true;
+			else if (key.watchable() instanceof Path && event.context() instanceof Path)
+				out |= watchedFiles.contains(((Path)key.watchable()).resolve((Path)event.context()));
+		}
+		key.reset();
+		return out;
+	}
+
+	// The watcher thread loop.
+	private void watchLoop()
+	{
+		try {
+			while (!closed)
+			{
+				if (!isRelevant(watchService.take()))
+					continue;
+
+				// debounce: wait until no events arrive for a while.
+				WatchKey key;
+				while ((key = watchService.poll(debounceMillis, TimeUnit.MILLISECONDS)) != null)
+					isRelevant(key);
+
+				if (closed)
+					break;
+
+				try {
+					reload();
+					ReloadListener l = listener;
+					if (l != null)
+						l.onReload(currentRoot.get());
+				} catch (IOException | RuntimeException e) {
+					ReloadListener l = listener;
+					if (l != null)
+						l.onReloadError(e);
+				}
+			}
+		} catch (ClosedWatchServiceException e) {
+			// Closed - end thread.
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+	}
+
+	private static Path toPath(String path)
+	{
+		return new File(path).toPath().toAbsolutePath().normalize();
+	}
+
+	/**
+	 * Includer that records every resolved path, and watches its directory before it is read.
+	 */
+	private class TrackingIncluder implements Includer
+	{
+		private Includer includer;
+		private Set<String> resolvedPaths;
+
+		private TrackingIncluder(Includer includer)
+		{
+			this.includer = includer;
+			this.resolvedPaths = new HashSet<>();
+		}
+
+		@Override
+		public String getIncludeResourcePath(String streamName, String path) throws IOException
+		{
+			String out = includer.getIncludeResourcePath(streamName, path);
+			if (out != null)
+			{
+				resolvedPaths.add(out);
+				if (!out.startsWith(CLASSPATH_PREFIX)) try {
+					watchDirectory(toPath(out));
+				} catch (IOException e) {
+					// missing directories fail the read, and are registered again after it.
+				}
+			}
+			return out;
+		}
+
+		@Override
+		public InputStream getIncludeResource(String path) throws IOException
+		{
+			return includer.getIncludeResource(path);
+		}
+	}
+
+}
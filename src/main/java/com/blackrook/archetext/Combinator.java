@@ -10,6 +10,8 @@ package com.blackrook.archetext;
 import java.util.ArrayList;
 import java.util.List;
 import java.util.Set;
+import java.util.function.DoubleBinaryOperator;
+import java.util.function.LongBinaryOperator;
 
 import com.blackrook.archetext.ArcheTextValue.Type;
 import com.blackrook.archetext.exception.ArcheTextOperationException;
@@ -23,9 +25,9 @@ public enum Combinator
 	SET("=")
 	{
 		@Override
-		public ArcheTextValue combine(ArcheTextValue operand, ArcheTextValue source)
+		ArcheTextValue combineGeneral(ArcheTextValue operand, ArcheTextValue source)
 		{
-			return operand != null ? operand.copy() : null;
+			return operand != null ? operand.share() : null;
 		}
 
 	},
@@ -34,7 +36,7 @@ public enum Combinator
 	{
 		@Override
 		@SuppressWarnings("unchecked")
-		public ArcheTextValue combine(ArcheTextValue operand, ArcheTextValue source)
+		ArcheTextValue combineGeneral(ArcheTextValue operand, ArcheTextValue source)
 		{
 			if (source.isNull())
 				return new ArcheTextValue(Type.NULL, null);
@@ -47,8 +49,6 @@ public enum Combinator
 						source = source.promoteTo(operand.type);
 					else if (source.type.compareTo(operand.type) > 0)
 						operand = operand.promoteTo(source.type);
-					else
-						source = source.copy();
 				}
 				break;
 			}
@@ -95,7 +95,7 @@ public enum Combinator
 	{
 		@Override
 		@SuppressWarnings("unchecked")
-		public ArcheTextValue combine(ArcheTextValue operand, ArcheTextValue source)
+		ArcheTextValue combineGeneral(ArcheTextValue operand, ArcheTextValue source)
 		{
 			if (source.isNull())
 				return new ArcheTextValue(Type.NULL, null);
@@ -108,8 +108,6 @@ public enum Combinator
 						source = source.promoteTo(operand.type);
 					else if (source.type.compareTo(operand.type) > 0)
 						operand = operand.promoteTo(source.type);
-					else
-						source = source.copy();
 				}
 				break;
 			}
@@ -151,7 +149,7 @@ public enum Combinator
 	MULTIPLY("*=")
 	{
 		@Override
-		public ArcheTextValue combine(ArcheTextValue operand, ArcheTextValue source)
+		ArcheTextValue combineGeneral(ArcheTextValue operand, ArcheTextValue source)
 		{
 			if (source.isNull())
 				return new ArcheTextValue(Type.NULL, null);
@@ -162,8 +160,6 @@ public enum Combinator
 				source = source.promoteTo(operand.type);
 			else if (source.type.compareTo(operand.type) > 0)
 				operand = operand.promoteTo(source.type);
-			else
-				source = source.copy();
 			
 			switch (operand.type)
 			{
@@ -186,7 +182,7 @@ public enum Combinator
 	DIVISION("/=")
 	{
 		@Override
-		public ArcheTextValue combine(ArcheTextValue operand, ArcheTextValue source)
+		ArcheTextValue combineGeneral(ArcheTextValue operand, ArcheTextValue source)
 		{
 			if (source.isNull())
 				return new ArcheTextValue(Type.NULL, null);
@@ -197,8 +193,6 @@ public enum Combinator
 				source = source.promoteTo(operand.type);
 			else if (source.type.compareTo(operand.type) > 0)
 				operand = operand.promoteTo(source.type);
-			else
-				source = source.copy();
 			
 			switch (operand.type)
 			{
@@ -227,7 +221,7 @@ public enum Combinator
 	MODULO("%=")
 	{
 		@Override
-		public ArcheTextValue combine(ArcheTextValue operand, ArcheTextValue source)
+		ArcheTextValue combineGeneral(ArcheTextValue operand, ArcheTextValue source)
 		{
 			if (source.isNull())
 				return new ArcheTextValue(Type.NULL, null);
@@ -238,8 +232,6 @@ public enum Combinator
 				source = source.promoteTo(operand.type);
 			else if (source.type.compareTo(operand.type) > 0)
 				operand = operand.promoteTo(source.type);
-			else
-				source = source.copy();
 			
 			switch (operand.type)
 			{
@@ -268,7 +260,7 @@ public enum Combinator
 	POWER("'=")
 	{
 		@Override
-		public ArcheTextValue combine(ArcheTextValue operand, ArcheTextValue source)
+		ArcheTextValue combineGeneral(ArcheTextValue operand, ArcheTextValue source)
 		{
 			if (source.isNull())
 				return new ArcheTextValue(Type.NULL, null);
@@ -279,8 +271,6 @@ public enum Combinator
 				source = source.promoteTo(operand.type);
 			else if (source.type.compareTo(operand.type) > 0)
 				operand = operand.promoteTo(source.type);
-			else
-				source = source.copy();
 			
 			switch (operand.type)
 			{
@@ -304,7 +294,7 @@ public enum Combinator
 	{
 		@Override
 		@SuppressWarnings("unchecked")
-		public ArcheTextValue combine(ArcheTextValue operand, ArcheTextValue source)
+		ArcheTextValue combineGeneral(ArcheTextValue operand, ArcheTextValue source)
 		{
 			if (source.isNull())
 				return new ArcheTextValue(Type.NULL, null);
@@ -374,7 +364,7 @@ public enum Combinator
 	{
 		@Override
 		@SuppressWarnings("unchecked")
-		public ArcheTextValue combine(ArcheTextValue operand, ArcheTextValue source)
+		ArcheTextValue combineGeneral(ArcheTextValue operand, ArcheTextValue source)
 		{
 			if (source.isNull())
 				return new ArcheTextValue(Type.NULL, null);
@@ -444,7 +434,7 @@ public enum Combinator
 	{
 		@Override
 		@SuppressWarnings("unchecked")
-		public ArcheTextValue combine(ArcheTextValue operand, ArcheTextValue source)
+		ArcheTextValue combineGeneral(ArcheTextValue operand, ArcheTextValue source)
 		{
 			if (source.isNull())
 				return new ArcheTextValue(Type.NULL, null);
@@ -514,7 +504,7 @@ public enum Combinator
 	{
 		@Override
 		@SuppressWarnings("unchecked")
-		public ArcheTextValue combine(ArcheTextValue operand, ArcheTextValue source)
+		ArcheTextValue combineGeneral(ArcheTextValue operand, ArcheTextValue source)
 		{
 			if (source.isNull())
 				return new ArcheTextValue(Type.NULL, null);
@@ -615,10 +605,10 @@ public enum Combinator
 	{
 		@Override
 		@SuppressWarnings("unchecked")
-		public ArcheTextValue combine(ArcheTextValue operand, ArcheTextValue source)
+		ArcheTextValue combineGeneral(ArcheTextValue operand, ArcheTextValue source)
 		{
 			if (source == null)
-				return operand.copy();
+				return operand.share();
 			if (source.isNull())
 				return new ArcheTextValue(Type.NULL, null);
 
@@ -718,10 +708,10 @@ public enum Combinator
 	{
 		@Override
 		@SuppressWarnings("unchecked")
-		public ArcheTextValue combine(ArcheTextValue operand, ArcheTextValue source)
+		ArcheTextValue combineGeneral(ArcheTextValue operand, ArcheTextValue source)
 		{
 			if (source == null)
-				return operand.copy();
+				return operand.share();
 			if (source.isNull())
 				return new ArcheTextValue(Type.NULL, null);
 
@@ -819,12 +809,85 @@ public enum Combinator
 	
 	;
 	
+	/** Number of value types. */
+	private static final int TYPE_COUNT = Type.values().length;
+	/** Types that support arithmetic and bitwise operators. */
+	private static final Type[] NUMERIC_TYPES = {Type.BOOLEAN, Type.INTEGER, Type.FLOAT};
+	
+	static
+	{
+		arithmetic(ADD, (s, o) -> s || o, (s, o) -> s + o, (s, o) -> s + o);
+		arithmetic(SUBTRACT, (s, o) -> s || o, (s, o) -> s - o, (s, o) -> s - o);
+		arithmetic(MULTIPLY, (s, o) -> s && o, (s, o) -> s * o, (s, o) -> s * o);
+		arithmetic(DIVISION, (s, o) -> s && o, 
+			(s, o) -> {
+				if (o == 0L)
+					throw new ArcheTextOperationException("Divide by zero.");
+				return s / o;
+			}, 
+			(s, o) -> {
+				if (o == 0.0)
+					throw new ArcheTextOperationException("Divide by zero.");
+				return s / o;
+			}
+		);
+		arithmetic(MODULO, (s, o) -> s || o, 
+			(s, o) -> {
+				if (o == 0L)
+					throw new ArcheTextOperationException("Divide by zero.");
+				return s % o;
+			}, 
+			(s, o) -> {
+				if (o == 0.0)
+					throw new ArcheTextOperationException("Divide by zero.");
+				return s % o;
+			}
+		);
+		arithmetic(POWER, (s, o) -> s && o, (s, o) -> (long)Math.pow(s, o), (s, o) -> Math.pow(s, o));
+
+		bitwise(BITWISEAND, (s, o) -> s & o);
+		bitwise(BITWISEOR, (s, o) -> s | o);
+		bitwise(BITWISEXOR, (s, o) -> s ^ o);
+		bitwise(LEFTSHIFT, (s, o) -> s << (int)o);
+		bitwise(RIGHTSHIFT, (s, o) -> s >> (int)o);
+		bitwise(RIGHTPADDINGSHIFT, (s, o) -> s >>> (int)o);
+
+		ADD.put(Type.STRING, Type.STRING, (operand, source) -> new ArcheTextValue(Type.STRING, source.getString() + operand.getString()));
+		ADD.put(Type.SET, Type.SET, (operand, source) -> new ArcheTextValue(Type.SET, Utils.union(toSet(source), toSet(operand))));
+		ADD.put(Type.LIST, Type.LIST, (operand, source) -> {
+			List<ArcheTextValue> sourceList = toList(source);
+			List<ArcheTextValue> operandList = toList(operand);
+			List<ArcheTextValue> packed = ArcheTextNumericList.concat(sourceList, operandList);
+			if (packed != null)
+				return new ArcheTextValue(Type.LIST, packed);
+			List<ArcheTextValue> list = new ArrayList<ArcheTextValue>(sourceList.size() + operandList.size());
+			list.addAll(sourceList);
+			list.addAll(operandList);
+			return new ArcheTextValue(Type.LIST, list);
+		});
+		SUBTRACT.put(Type.STRING, Type.STRING, (operand, source) -> new ArcheTextValue(Type.STRING, source.getString().replace(operand.getString(), "")));
+		SUBTRACT.put(Type.SET, Type.SET, (operand, source) -> new ArcheTextValue(Type.SET, Utils.difference(toSet(source), toSet(operand))));
+		BITWISEAND.put(Type.SET, Type.SET, (operand, source) -> new ArcheTextValue(Type.SET, Utils.intersection(toSet(source), toSet(operand))));
+		BITWISEOR.put(Type.SET, Type.SET, (operand, source) -> new ArcheTextValue(Type.SET, Utils.union(toSet(source), toSet(operand))));
+		BITWISEXOR.put(Type.SET, Type.SET, (operand, source) -> new ArcheTextValue(Type.SET, Utils.xor(toSet(source), toSet(operand))));
+		
+		for (Combinator combinator : new Combinator[]{MULTIPLY, DIVISION, MODULO, POWER})
+		{
+			for (Type operandType : NUMERIC_TYPES)
+				combinator.put(Type.LIST, operandType, (operand, source) -> elementwise(combinator, operand, source));
+			combinator.put(Type.LIST, Type.LIST, (operand, source) -> elementwise(combinator, operand, source));
+		}
+	}
+	
 	/** Assignment operator itself. */
 	private String assignmentOperator;
+	/** Specialized operations by source type, then operand type. Null entries use the general path. */
+	private Operation[][] operations;
 	
 	private Combinator(String assignmentOperator)
 	{
 		this.assignmentOperator = assignmentOperator;
+		this.operations = null;
 	}
 	
 	/** @return the assignment operator for this combinator. */
@@ -840,8 +903,160 @@ public enum Combinator
 	 * @return the resultant value.
 	 * @throws NullPointerException if source or operand is null. If source or operand is supposed to be null, use {@link ArcheTextValue#NULL}.
 	 */
-	public abstract ArcheTextValue combine(ArcheTextValue operand, ArcheTextValue source);
+	public ArcheTextValue combine(ArcheTextValue operand, ArcheTextValue source)
+	{
+		if (operations != null && operand != null && source != null)
+		{
+			Operation operation = operations[source.type.ordinal()][operand.type.ordinal()];
+			if (operation != null)
+				return operation.apply(operand, source);
+		}
+		return combineGeneral(operand, source);
+	}
 
+	/** 
+	 * Combines two values, promoting one of them to the other's type if necessary.
+	 * This is the path for the type pairs that have no specialized operation.
+	 * @param operand the incoming value.
+	 * @param source the source value that this is combining with.
+	 * @return the resultant value.
+	 */
+	abstract ArcheTextValue combineGeneral(ArcheTextValue operand, ArcheTextValue source);
+
+	// Adds a specialized operation for a type pair.
+	private void put(Type sourceType, Type operandType, Operation operation)
+	{
+		if (operations == null)
+			operations = new Operation[TYPE_COUNT][TYPE_COUNT];
+		operations[sourceType.ordinal()][operandType.ordinal()] = operation;
+	}
+
+	// Adds operations for all pairs of booleans, integers, and floats.
+	// The result type is the "higher" of the two types, like promotion, but no promoted values are created.
+	private static void arithmetic(Combinator combinator, BooleanBinaryOperator booleans, LongBinaryOperator integers, DoubleBinaryOperator floats)
+	{
+		combinator.put(Type.BOOLEAN, Type.BOOLEAN, (operand, source) -> new ArcheTextValue(Type.BOOLEAN, booleans.applyAsBoolean(source.getBoolean(), operand.getBoolean())));
+		for (Type sourceType : NUMERIC_TYPES) for (Type operandType : NUMERIC_TYPES)
+		{
+			if (sourceType == Type.FLOAT || operandType == Type.FLOAT)
+				combinator.put(sourceType, operandType, (operand, source) -> new ArcheTextValue(Type.FLOAT, floats.applyAsDouble(toDouble(source), toDouble(operand))));
+			else if (sourceType == Type.INTEGER || operandType == Type.INTEGER)
+				combinator.put(sourceType, operandType, (operand, source) -> new ArcheTextValue(Type.INTEGER, integers.applyAsLong(toLong(source), toLong(operand))));
+		}
+	}
+	
+	// Adds operations for all pairs of booleans, integers, and floats as bits (shifts only take integer operands).
+	private static void bitwise(Combinator combinator, LongBinaryOperator bits)
+	{
+		boolean shift = combinator == LEFTSHIFT || combinator == RIGHTSHIFT || combinator == RIGHTPADDINGSHIFT;
+		for (Type sourceType : NUMERIC_TYPES) for (Type operandType : NUMERIC_TYPES)
+		{
+			if (shift && operandType != Type.INTEGER)
+				continue;
+			
+			switch (sourceType.ordinal() > operandType.ordinal() ? sourceType : operandType)
+			{
+				case BOOLEAN:
+					combinator.put(sourceType, operandType, (operand, source) -> new ArcheTextValue(Type.BOOLEAN, bits.applyAsLong(toBits(source), toBits(operand)) != 0L));
+					break;
+				case INTEGER:
+					combinator.put(sourceType, operandType, (operand, source) -> new ArcheTextValue(Type.INTEGER, bits.applyAsLong(toBits(source), toBits(operand))));
+					break;
+				default:
+					combinator.put(sourceType, operandType, (operand, source) -> new ArcheTextValue(Type.FLOAT, Double.longBitsToDouble(bits.applyAsLong(toBits(source), toBits(operand)))));
+					break;
+			}
+		}
+	}
+	
+	// Combines each element of a list with an operand, or with the matching elements of a list operand.
+	private static ArcheTextValue elementwise(Combinator combinator, ArcheTextValue operand, ArcheTextValue source)
+	{
+		List<ArcheTextValue> list = toList(source);
+		List<ArcheTextValue> operands = operand.type == Type.LIST ? toList(operand) : null;
+		if (operands != null && operands.size() != list.size())
+			throw new ArcheTextOperationException("Can't use an element-wise operator with lists of different lengths.");
+
+		if (list instanceof ArcheTextNumericList)
+		{
+			ArcheTextValue packed = ((ArcheTextNumericList)list).combine(combinator, operand);
+			if (packed != null)
+				return packed;
+		}
+
+		List<ArcheTextValue> out = new ArrayList<ArcheTextValue>(list.size());
+		for (int i = 0; i < list.size(); i++)
+			out.add(combinator.combine(operands != null ? operands.get(i) : operand, list.get(i)));
+		return new ArcheTextValue(Type.LIST, ArcheTextNumericList.pack(out));
+	}
+	
+	// Gets a boolean, integer, or float as an integer, like promotion.
+	private static long toLong(ArcheTextValue value)
+	{
+		return value.type == Type.BOOLEAN ? (value.getBoolean() ? 1L : 0L) : value.getLong();
+	}
+
+	// Gets a boolean, integer, or float as a float, like promotion.
+	private static double toDouble(ArcheTextValue value)
+	{
+		switch (value.type)
+		{
+			case BOOLEAN:
+				return value.getBoolean() ? 1.0 : 0.0;
+			case INTEGER:
+				return (double)value.getLong();
+			default:
+				return value.getDouble();
+		}
+	}
+
+	// Gets a set value's set.
+	@SuppressWarnings("unchecked")
+	private static Set<ArcheTextValue> toSet(ArcheTextValue value)
+	{
+		return (Set<ArcheTextValue>)value.value;
+	}
+
+	// Gets a list value's list.
+	@SuppressWarnings("unchecked")
+	private static List<ArcheTextValue> toList(ArcheTextValue value)
+	{
+		return (List<ArcheTextValue>)value.value;
+	}
+
+	// Gets a boolean, integer, or float as bits.
+	private static long toBits(ArcheTextValue value)
+	{
+		switch (value.type)
+		{
+			case BOOLEAN:
+				return value.getBoolean() ? -1L : 0L;
+			case INTEGER:
+				return value.getLong();
+			default:
+				return Double.doubleToRawLongBits(value.getDouble());
+		}
+	}
+
+
+	/**
+	 * A specialized operation for a single pair of types.
+	 */
+	@FunctionalInterface
+	private interface Operation
+	{
+		ArcheTextValue apply(ArcheTextValue operand, ArcheTextValue source);
+	}
+	
+	/**
+	 * An operation on two booleans.
+	 */
+	@FunctionalInterface
+	private interface BooleanBinaryOperator
+	{
+		boolean applyAsBoolean(boolean source, boolean operand);
+	}
+	
 	private static void operatorObjectCheck(String operatorName, ArcheTextValue operand, ArcheTextValue source)
 	{
 		switch (source.type)
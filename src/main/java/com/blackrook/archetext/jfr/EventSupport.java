@@ -0,0 +1,34 @@
+/*******************************************************************************
+ * Copyright (c) 2016-2020 Black Rook Software
+ * This program and the accompanying materials are made available under the 
+ * terms of the GNU Lesser Public License v2.1 which accompanies this 
+ * distribution, and is available at 
+ * http://www.gnu.org/licenses/old-licenses/lgpl-2.1.html
+ ******************************************************************************/
+package com.blackrook.archetext.jfr;
+
+/**
+ * Flight Recorder support checks.
+ * <p>
+ * The events in this package need the <code>jdk.jfr</code> module, which not every Java 8 runtime has.
+ * Code that creates events checks {@link #AVAILABLE} first, so that the event classes are never loaded without it.
+ * @author Matthew Tropiano
+ */
+public final class EventSupport
+{
+	/** Is Flight Recorder available on this runtime? */
+	public static final boolean AVAILABLE = isAvailable();
+
+	private EventSupport() {}
+
+	private static boolean isAvailable()
+	{
+		try {
+			Class.forName("jdk.jfr.Event");
+			return true;
+		} catch (ClassNotFoundException | LinkageError e) {
+			return false;
+		}
+	}
+
+}
@@ -0,0 +1,76 @@
+/*******************************************************************************
+ * Copyright (c) 2016-2020 Black Rook Software
+ * This program and the accompanying materials are made available under the 
+ * terms of the GNU Lesser Public License v2.1 which accompanies this 
+ * distribution, and is available at 
+ * http://www.gnu.org/licenses/old-licenses/lgpl-2.1.html
+ ******************************************************************************/
+package com.blackrook.archetext.jfr;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.EventType;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.Timespan;
+
+/**
+ * Flight Recorder event for a field lookup on an object, committed while an
+ * {@link com.blackrook.archetext.ArcheTextProfiler} is running.
+ * @author Matthew Tropiano
+ */
+@Name("com.blackrook.archetext.FieldLookup")
+@Label("Field Lookup")
+@Category("ArcheText")
+@Description("Resolution of a field value through an object's lineage.")
+public class FieldLookupEvent extends Event
+{
+	/** This event's type, checked before an event is created. */
+	private static final EventType TYPE = EventType.getEventType(FieldLookupEvent.class);
+
+	@Label("Object Type")
+	public String objectType;
+
+	@Label("Object Name")
+	public String objectName;
+
+	@Label("Field Name")
+	public String fieldName;
+
+	@Label("Depth")
+	@Description("Hierarchy depth walked (1 is the object itself).")
+	public int depth;
+
+	@Label("Combinations")
+	@Description("Amount of field declarations whose combinators were applied.")
+	public int combinations;
+
+	@Label("Lookup Time")
+	@Timespan(Timespan.NANOSECONDS)
+	public long lookupTime;
+
+	/**
+	 * Commits a field lookup event, if Flight Recorder is recording them.
+	 * @param objectType the object type.
+	 * @param objectName the object name.
+	 * @param fieldName the field name.
+	 * @param depth the hierarchy depth walked.
+	 * @param combinations the amount of field declarations combined.
+	 * @param lookupTime the time taken, in nanoseconds.
+	 */
+	public static void commit(String objectType, String objectName, String fieldName, int depth, int combinations, long lookupTime)
+	{
+		if (!TYPE.isEnabled())
+			return;
+		FieldLookupEvent event = new FieldLookupEvent();
+		event.objectType = objectType;
+		event.objectName = objectName;
+		event.fieldName = fieldName;
+		event.depth = depth;
+		event.combinations = combinations;
+		event.lookupTime = lookupTime;
+		event.commit();
+	}
+
+}
@@ -0,0 +1,83 @@
+/*******************************************************************************
+ * Copyright (c) 2016-2020 Black Rook Software
+ * This program and the accompanying materials are made available under the 
+ * terms of the GNU Lesser Public License v2.1 which accompanies this 
+ * distribution, and is available at 
+ * http://www.gnu.org/licenses/old-licenses/lgpl-2.1.html
+ ******************************************************************************/
+package com.blackrook.archetext.jfr;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.EventType;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+/**
+ * Flight Recorder event for resolving and opening an included stream.
+ * @author Matthew Tropiano
+ */
+@Name("com.blackrook.archetext.Include")
+@Label("Include")
+@Category("ArcheText")
+@Description("Resolution and opening of an included stream through an includer.")
+public class IncludeEvent extends Event
+{
+	/** This event's type, checked before an event is created. */
+	private static final EventType TYPE = EventType.getEventType(IncludeEvent.class);
+
+	@Label("Stream Name")
+	@Description("Name of the stream that contains the include.")
+	public String streamName;
+
+	@Label("Path")
+	@Description("Path, as written in the include directive.")
+	public String path;
+
+	@Label("Resolved Path")
+	public String resolvedPath;
+
+	@Label("Found")
+	public boolean found;
+
+	@Label("Skipped")
+	@Description("Set if the stream was not read again because of #pragma once, #include_once, or an include guard.")
+	public boolean skipped;
+
+	/**
+	 * Starts an include event.
+	 * @param streamName the name of the stream that contains the include.
+	 * @param path the path to include.
+	 * @return a new event, or null if Flight Recorder is not recording it.
+	 */
+	public static IncludeEvent start(String streamName, String path)
+	{
+		if (!TYPE.isEnabled())
+			return null;
+		IncludeEvent event = new IncludeEvent();
+		event.streamName = streamName;
+		event.path = path;
+		event.begin();
+		return event;
+	}
+
+	/**
+	 * Ends and commits this event, if it meets its recording threshold.
+	 * @param resolvedPath the resolved path, or null if the path could not be resolved.
+	 * @param found true if the resource was opened, false if not.
+	 * @param skipped true if the resource was skipped without opening it, because it was already included.
+	 */
+	public void finish(String resolvedPath, boolean found, boolean skipped)
+	{
+		end();
+		if (shouldCommit())
+		{
+			this.resolvedPath = resolvedPath;
+			this.found = found;
+			this.skipped = skipped;
+			commit();
+		}
+	}
+
+}
@@ -0,0 +1,71 @@
+/*******************************************************************************
+ * Copyright (c) 2016-2020 Black Rook Software
+ * This program and the accompanying materials are made available under the 
+ * terms of the GNU Lesser Public License v2.1 which accompanies this 
+ * distribution, and is available at 
+ * http://www.gnu.org/licenses/old-licenses/lgpl-2.1.html
+ ******************************************************************************/
+package com.blackrook.archetext.jfr;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.EventType;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+/**
+ * Flight Recorder event for expanding a macro in the token stream.
+ * @author Matthew Tropiano
+ */
+@Name("com.blackrook.archetext.MacroExpansion")
+@Label("Macro Expansion")
+@Category("ArcheText")
+@Description("Expansion of a preprocessor macro, including reading its arguments.")
+public class MacroExpansionEvent extends Event
+{
+	/** This event's type, checked before an event is created. */
+	private static final EventType TYPE = EventType.getEventType(MacroExpansionEvent.class);
+
+	@Label("Stream Name")
+	public String streamName;
+
+	@Label("Macro Name")
+	public String macroName;
+
+	@Label("Tokens")
+	@Description("Amount of tokens that the macro expanded to.")
+	public int tokenCount;
+
+	/**
+	 * Starts a macro expansion event.
+	 * @param streamName the name of the stream that the macro was used in.
+	 * @param macroName the macro name.
+	 * @return a new event, or null if Flight Recorder is not recording it.
+	 */
+	public static MacroExpansionEvent start(String streamName, String macroName)
+	{
+		if (!TYPE.isEnabled())
+			return null;
+		MacroExpansionEvent event = new MacroExpansionEvent();
+		event.streamName = streamName;
+		event.macroName = macroName;
+		event.begin();
+		return event;
+	}
+
+	/**
+	 * Ends and commits this event, if it meets its recording threshold.
+	 * @param tokenCount the amount of tokens that the macro expanded to.
+	 */
+	public void finish(int tokenCount)
+	{
+		end();
+		if (shouldCommit())
+		{
+			this.tokenCount = tokenCount;
+			commit();
+		}
+	}
+
+}
@@ -0,0 +1,76 @@
+/*******************************************************************************
+ * Copyright (c) 2016-2020 Black Rook Software
+ * This program and the accompanying materials are made available under the 
+ * terms of the GNU Lesser Public License v2.1 which accompanies this 
+ * distribution, and is available at 
+ * http://www.gnu.org/licenses/old-licenses/lgpl-2.1.html
+ ******************************************************************************/
+package com.blackrook.archetext.jfr;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.EventType;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+/**
+ * Flight Recorder event for applying an object's fields to a Java object.
+ * @author Matthew Tropiano
+ */
+@Name("com.blackrook.archetext.ObjectBind")
+@Label("Object Bind")
+@Category("ArcheText")
+@Description("Application of an object's fields to the public fields and setters of a Java object.")
+public class ObjectBindEvent extends Event
+{
+	/** This event's type, checked before an event is created. */
+	private static final EventType TYPE = EventType.getEventType(ObjectBindEvent.class);
+
+	@Label("Object Type")
+	public String objectType;
+
+	@Label("Object Name")
+	public String objectName;
+
+	@Label("Target Class")
+	public Class<?> targetClass;
+
+	@Label("Members")
+	@Description("Amount of fields and setters that were set.")
+	public int memberCount;
+
+	/**
+	 * Starts an object bind event.
+	 * @param objectType the type of the source object.
+	 * @param objectName the name of the source object.
+	 * @param targetClass the class of the target object.
+	 * @return a new event, or null if Flight Recorder is not recording it.
+	 */
+	public static ObjectBindEvent start(String objectType, String objectName, Class<?> targetClass)
+	{
+		if (!TYPE.isEnabled())
+			return null;
+		ObjectBindEvent event = new ObjectBindEvent();
+		event.objectType = objectType;
+		event.objectName = objectName;
+		event.targetClass = targetClass;
+		event.begin();
+		return event;
+	}
+
+	/**
+	 * Ends and commits this event, if it meets its recording threshold.
+	 * @param memberCount the amount of fields and setters that were set.
+	 */
+	public void finish(int memberCount)
+	{
+		end();
+		if (shouldCommit())
+		{
+			this.memberCount = memberCount;
+			commit();
+		}
+	}
+
+}
@@ -0,0 +1,58 @@
+/*******************************************************************************
+ * Copyright (c) 2016-2020 Black Rook Software
+ * This program and the accompanying materials are made available under the 
+ * terms of the GNU Lesser Public License v2.1 which accompanies this 
+ * distribution, and is available at 
+ * http://www.gnu.org/licenses/old-licenses/lgpl-2.1.html
+ ******************************************************************************/
+package com.blackrook.archetext.jfr;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.EventType;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+/**
+ * Flight Recorder event for reading a stream (and what it includes) into a root.
+ * @author Matthew Tropiano
+ */
+@Name("com.blackrook.archetext.Parse")
+@Label("Parse")
+@Category("ArcheText")
+@Description("Reading of a stream, plus the streams that it includes, into a root.")
+public class ParseEvent extends Event
+{
+	/** This event's type, checked before an event is created. */
+	private static final EventType TYPE = EventType.getEventType(ParseEvent.class);
+
+	@Label("Stream Name")
+	public String streamName;
+
+	/**
+	 * Starts a parse event.
+	 * @param streamName the name of the stream being read.
+	 * @return a new event, or null if Flight Recorder is not recording it.
+	 */
+	public static ParseEvent start(String streamName)
+	{
+		if (!TYPE.isEnabled())
+			return null;
+		ParseEvent event = new ParseEvent();
+		event.streamName = streamName;
+		event.begin();
+		return event;
+	}
+
+	/**
+	 * Ends and commits this event, if it meets its recording threshold.
+	 */
+	public void finish()
+	{
+		end();
+		if (shouldCommit())
+			commit();
+	}
+
+}
@@ -0,0 +1,58 @@
+/*******************************************************************************
+ * Copyright (c) 2016-2020 Black Rook Software
+ * This program and the accompanying materials are made available under the 
+ * terms of the GNU Lesser Public License v2.1 which accompanies this 
+ * distribution, and is available at 
+ * http://www.gnu.org/licenses/old-licenses/lgpl-2.1.html
+ ******************************************************************************/
+package com.blackrook.archetext.jfr;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.EventType;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+/**
+ * Flight Recorder event for creating the type profile of a class that had none yet.
+ * @author Matthew Tropiano
+ */
+@Name("com.blackrook.archetext.TypeProfile")
+@Label("Type Profile")
+@Category("ArcheText")
+@Description("Creation of the reflected profile of a class, on its first use for conversion or binding.")
+public class TypeProfileEvent extends Event
+{
+	/** This event's type, checked before an event is created. */
+	private static final EventType TYPE = EventType.getEventType(TypeProfileEvent.class);
+
+	@Label("Profiled Class")
+	public Class<?> profiledClass;
+
+	/**
+	 * Starts a type profile event.
+	 * @param profiledClass the class being profiled.
+	 * @return a new event, or null if Flight Recorder is not recording it.
+	 */
+	public static TypeProfileEvent start(Class<?> profiledClass)
+	{
+		if (!TYPE.isEnabled())
+			return null;
+		TypeProfileEvent event = new TypeProfileEvent();
+		event.profiledClass = profiledClass;
+		event.begin();
+		return event;
+	}
+
+	/**
+	 * Ends and commits this event, if it meets its recording threshold.
+	 */
+	public void finish()
+	{
+		end();
+		if (shouldCommit())
+			commit();
+	}
+
+}
@@ -0,0 +1,2 @@
+/** Contains Java Flight Recorder events for ArcheText reading and field resolution. */
+package com.blackrook.archetext.jfr;
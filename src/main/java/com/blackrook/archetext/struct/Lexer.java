@@ -189,7 +189,9 @@ public class Lexer
 							lineNumber = readerStack.getCurrentLineNumber();
 							breakloop = true;
 						}
-						close(readerStack.pop());
+						ReaderStack.Stream stream = readerStack.pop();
+						close(stream);
+						streamEnded(stream.getStreamName(), stream.getCharacterCount());
 					}
 					else if (isNewline(c))
 					{
@@ -1338,6 +1340,33 @@ public class Lexer
 			return END_OF_STREAM; 
 	}
 
+	/**
+	 * Skips characters in the current stream until the start of a line whose first non-whitespace character
+	 * is the provided character, which is consumed. Lines are counted as they are skipped.
+	 * The stream is scanned in bulk, so the skipped characters are never returned by {@link #readChar()}.
+	 * This must only be called at the beginning of a line.
+	 * @param lineStart the character to look for.
+	 * @return true if the character was found, or false if the end of the current stream (or lexer) was reached first.
+	 * @throws IOException if a character cannot be read.
+	 */
+	protected boolean skipToLineStart(char lineStart) throws IOException
+	{
+		if (readerStack.isEmpty())
+			return false;
+		return readerStack.peek().skipToLineStart(lineStart);
+	}
+
+	/**
+	 * Called when the end of a stream is reached, after it is closed.
+	 * Does nothing by default.
+	 * @param streamName the name of the stream.
+	 * @param characters the amount of characters read from the stream.
+	 */
+	protected void streamEnded(String streamName, long characters)
+	{
+		// Do nothing.
+	}
+
 	/**
 	 * @return the current state.
 	 */
@@ -1790,9 +1819,13 @@ public class Lexer
 			private int line;
 			/** Current character index. */
 			private int charIndex;
+			/** Amount of characters read from the reader. */
+			private long characterCount;
 	
 			private int[] charStack;
 			private int charStackPosition;
+			/** Buffer for bulk skipping, allocated on first use. */
+			private char[] skipBuffer;
 			
 			/**
 			 * Creates a new stream.
@@ -1829,6 +1862,11 @@ public class Lexer
 				return charIndex;
 			}
 			
+			private long getCharacterCount()
+			{
+				return characterCount;
+			}
+			
 			private boolean isNewlineChar(int c)
 			{
 				return c == '\r' || c == '\n';
@@ -1857,11 +1895,14 @@ public class Lexer
 						if (c == (int)'\n')
 							line++;
 
+						characterCount++;
 						newline = true;
 						c = reader.read();
 						if (!isNewlineChar(c))
 							pushChar(c);
 					}
+					if (c >= 0)
+						characterCount++;
 					if (newline)
 						c = (int)NEWLINE;
 				}
@@ -1873,6 +1914,67 @@ public class Lexer
 				return c;
 			}
 			
+			/**
+			 * Skips lines until one starts with a character, not counting whitespace.
+			 * The character is consumed.
+			 * @param lineStart the character to look for.
+			 * @return true if found, false if the end of the stream was reached.
+			 * @throws IOException if a character cannot be read.
+			 */
+			private boolean skipToLineStart(char lineStart) throws IOException
+			{
+				boolean lineBeginning = true;
+
+				// pushed-back characters were already counted.
+				while (charStackPosition >= 0)
+				{
+					int c = charStack[charStackPosition--];
+					if (c < 0)
+					{
+						pushChar(c);
+						return false;
+					}
+					else if (isNewlineChar(c))
+						lineBeginning = true;
+					else if (lineBeginning && c == lineStart)
+						return true;
+					else if (!Character.isWhitespace(c))
+						lineBeginning = false;
+				}
+
+				if (skipBuffer == null)
+					skipBuffer = new char[4096];
+
+				int n;
+				reader.mark(skipBuffer.length);
+				while ((n = reader.read(skipBuffer, 0, skipBuffer.length)) > 0)
+				{
+					for (int i = 0; i < n; i++)
+					{
+						char c = skipBuffer[i];
+						if (isNewlineChar(c))
+						{
+							if (c == '\n')
+								line++;
+							lineBeginning = true;
+						}
+						else if (lineBeginning && c == lineStart)
+						{
+							reader.reset();
+							reader.skip(i + 1);
+							characterCount += i + 1;
+							charIndex = 0;
+							return true;
+						}
+						else if (!Character.isWhitespace(c))
+							lineBeginning = false;
+					}
+					characterCount += n;
+					reader.mark(skipBuffer.length);
+				}
+				return false;
+			}
+
 			@Override
 			public void close() throws IOException
 			{
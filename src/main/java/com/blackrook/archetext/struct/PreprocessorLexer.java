@@ -7,31 +7,65 @@
  ******************************************************************************/
 package com.blackrook.archetext.struct;
 
+import java.io.BufferedInputStream;
+import java.io.ByteArrayInputStream;
 import java.io.File;
 import java.io.FileInputStream;
+import java.io.FileNotFoundException;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.InputStreamReader;
+import java.io.InterruptedIOException;
 import java.io.Reader;
 import java.io.StringReader;
+import java.net.URL;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
 import java.util.Deque;
 import java.util.HashMap;
+import java.util.HashSet;
 import java.util.Iterator;
+import java.util.LinkedHashMap;
 import java.util.LinkedList;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipInputStream;
+
+import com.blackrook.archetext.jfr.EventSupport;
+import com.blackrook.archetext.jfr.IncludeEvent;
+import com.blackrook.archetext.jfr.MacroExpansionEvent;
 
 /**
  * A lexer that scans for specific directives and affects the stream.
  * <ul>
  * <li><code>#include "file path"</code> - Pushes a file onto the stream stack.</li>
+ * <li><code>#include_once "file path"</code> - Pushes a file onto the stream stack, unless it was already included.</li>
+ * <li><code>#pragma once</code> - Marks the current file so that it is never included again.</li>
  * <li><code>#define MACRO ...tokens... </code> - Defines a macro and the string to replace them with. Defines are case-insensitive.</li>
+ * <li><code>#define MACRO(param, ...) ...tokens... </code> - Defines a function-like macro. Where the macro's name is followed by 
+ * 		<code>(arg, ...)</code> in the stream, the macro's tokens replace the whole use, with each parameter replaced by the tokens of its argument.
+ * 		Arguments are separated by commas that are not inside of parentheses, brackets, or braces. Parameter names are case-insensitive.</li>
  * <li><code>#undefine MACRO</code> - Undefines a macro.</li>
  * <li><code>#ifdef MACRO</code> - Includes the next set of lines (until <code>#endif</code>) if the provided macro is defined.</li>
  * <li><code>#ifndef MACRO</code> - Includes the next set of lines (until <code>#endif</code>) if the provided macro is NOT defined.</li>
  * <li><code>#endif</code> - Ends an "if" directive block.</li>
  * <li><code>#else</code> - Block that is used if an "if" block does not succeed.</li>
  * </ul>
+ * Files whose contents are entirely inside of an <code>#ifndef MACRO ... #endif</code> block (a classic include guard)
+ * are detected as they are read, and are not opened again by an <code>#include</code> while <code>MACRO</code> is defined.
  * @author Matthew Tropiano
  * @see Lexer
  */
@@ -41,6 +75,12 @@ public class PreprocessorLexer extends Lexer
 	public static final String DIRECTIVE_BANG = "!";
 	/** Preprocessor directive - Include. */
 	public static final String DIRECTIVE_INCLUDE = "include";
+	/** Preprocessor directive - Include Once. */
+	public static final String DIRECTIVE_INCLUDE_ONCE = "include_once";
+	/** Preprocessor directive - Pragma. */
+	public static final String DIRECTIVE_PRAGMA = "pragma";
+	/** Pragma - Once. */
+	public static final String PRAGMA_ONCE = "once";
 	/** Preprocessor directive - Define. */
 	public static final String DIRECTIVE_DEFINE = "define";
 	/** Preprocessor directive - Undefine. */
@@ -70,6 +110,11 @@ public class PreprocessorLexer extends Lexer
 	 * 		</ul>
 	 * </li>
 	 * </ul>
+	 * <p>
+	 * The shared instance ({@link PreprocessorLexer#DEFAULT_INCLUDER}) resolves every path each time. Includers created 
+	 * via {@link #DefaultIncluder(int, boolean)} keep bounded, least-recently-used caches of resolved file paths 
+	 * (by the including stream's directory and the include path) and of classpath resource lookups, so that the
+	 * filesystem is only checked once per unique include.
 	 */
 	public static class DefaultIncluder implements Includer
 	{
@@ -81,8 +126,54 @@ public class PreprocessorLexer extends Lexer
 			IS_WINDOWS = System.getProperty("os.name").contains("Windows");
 		}
 		
-		// cannot be instantiated outside of this class.
-		private DefaultIncluder(){}
+		/** Resolved file path cache, or null if not caching. */
+		private Map<String, ResolvedPath> pathCache;
+		/** Classpath resource cache, or null if not caching. */
+		private Map<String, URL> resourceCache;
+		/** If true, cached file paths are checked for a changed modified time. */
+		private boolean checkModified;
+		
+		// shared instance.
+		private DefaultIncluder()
+		{
+			this.pathCache = null;
+			this.resourceCache = null;
+			this.checkModified = false;
+		}
+
+		/**
+		 * Creates a new default includer with resolution caches.
+		 * <p>
+		 * If <code>checkModified</code> is true, a cached file path is resolved again if the modified time of the
+		 * file that it was resolved from (or its absence) has changed since. This still costs one check per include, 
+		 * but catches files that were added or removed. Classpath lookups are never checked again.
+		 * @param cacheSize the maximum amount of entries in each cache.
+		 * @param checkModified if true, check cached file paths' modified times on use.
+		 * @throws IllegalArgumentException if cacheSize is less than 1.
+		 */
+		public DefaultIncluder(int cacheSize, boolean checkModified)
+		{
+			if (cacheSize < 1)
+				throw new IllegalArgumentException("Cache size must be at least 1.");
+			this.pathCache = new LRUCache<>(cacheSize);
+			this.resourceCache = new LRUCache<>(cacheSize);
+			this.checkModified = checkModified;
+		}
+		
+		/**
+		 * Clears this includer's caches, if it has any.
+		 */
+		public void clearCache()
+		{
+			if (pathCache != null) synchronized (pathCache)
+			{
+				pathCache.clear();
+			}
+			if (resourceCache != null) synchronized (resourceCache)
+			{
+				resourceCache.clear();
+			}
+		}
 
 		@Override
 		public String getIncludeResourcePath(String streamName, String path) throws IOException
@@ -97,21 +188,27 @@ public class PreprocessorLexer extends Lexer
 
 			if (path.startsWith(CLASSPATH_PREFIX) || (streamParent != null && streamParent.startsWith(CLASSPATH_PREFIX)))
 				return (streamParent != null ? streamParent : "") + path;
+			else if (streamParent == null)
+				return path;
+			else if (pathCache == null)
+				return resolvePath(streamParent, path).path;
 			else
 			{
-				File f = null;
-				if (streamParent != null)
+				String key = streamParent + '\0' + path;
+				ResolvedPath out;
+				synchronized (pathCache)
 				{
-					f = new File(streamParent + path);
-					if (f.exists())
-						return f.getPath();
-					else
-						return path;
+					out = pathCache.get(key);
 				}
-				else
+				if (out == null || (checkModified && out.file.lastModified() != out.lastModified))
 				{
-					return path;
+					out = resolvePath(streamParent, path);
+					synchronized (pathCache)
+					{
+						pathCache.put(key, out);
+					}
 				}
+				return out.path;
 			}
 		}
 		
@@ -119,18 +216,411 @@ public class PreprocessorLexer extends Lexer
 		public InputStream getIncludeResource(String path) throws IOException
 		{
 			if (path.startsWith(CLASSPATH_PREFIX))
-				return openResource(path.substring(CLASSPATH_PREFIX.length()));
+			{
+				String resourcePath = path.substring(CLASSPATH_PREFIX.length());
+				if (resourceCache == null)
+					return openResource(resourcePath);
+				
+				URL url;
+				boolean cached;
+				synchronized (resourceCache)
+				{
+					url = resourceCache.get(resourcePath);
+					cached = url != null || resourceCache.containsKey(resourcePath);
+				}
+				if (!cached)
+				{
+					url = Thread.currentThread().getContextClassLoader().getResource(resourcePath);
+					synchronized (resourceCache)
+					{
+						resourceCache.put(resourcePath, url);
+					}
+				}
+				return url != null ? url.openStream() : null;
+			}
 			else
 				return new FileInputStream(new File(path));
 		}
 
+		// Resolves a path against the including stream's parent.
+		private ResolvedPath resolvePath(String streamParent, String path)
+		{
+			File f = new File(streamParent + path);
+			long lastModified = checkModified ? f.lastModified() : 0L;
+			return new ResolvedPath(f.exists() ? f.getPath() : path, f, lastModified);
+		}
+
 		private static InputStream openResource(String pathString)
 		{
 			return Thread.currentThread().getContextClassLoader().getResourceAsStream(pathString);
 		}
 		
+		/**
+		 * A resolved path, plus what it was resolved from.
+		 */
+		private static class ResolvedPath
+		{
+			private String path;
+			private File file;
+			private long lastModified;
+			
+			private ResolvedPath(String path, File file, long lastModified)
+			{
+				this.path = path;
+				this.file = file;
+				this.lastModified = lastModified;
+			}
+		}
+		
+		/**
+		 * A map that drops its least-recently-used entry past a maximum size.
+		 */
+		private static class LRUCache<K, V> extends LinkedHashMap<K, V>
+		{
+			private static final long serialVersionUID = 3641865920742510573L;
+			
+			private int maxSize;
+			
+			private LRUCache(int maxSize)
+			{
+				super(16, 0.75f, true);
+				this.maxSize = maxSize;
+			}
+			
+			@Override
+			protected boolean removeEldestEntry(Map.Entry<K, V> eldest)
+			{
+				return size() > maxSize;
+			}
+		}
+		
 	};
 	
+	/**
+	 * An includer that reads included resources ahead of time on background threads,
+	 * so that the lexer does not wait on I/O for each <code>#include</code>.
+	 * <p>
+	 * Resources are read fully into memory through another includer. Each resource read this way is
+	 * scanned for <code>#include</code> and <code>#include_once</code> lines, and those paths are resolved
+	 * and read in the background as well, usually long before the lexer reaches their directives.
+	 * Call {@link #prefetch(String)} on the first stream's path before reading it to start the chain,
+	 * and read it through {@link #getIncludeResource(String)}.
+	 * <p>
+	 * Includes in inactive <code>#ifdef</code> blocks are read as well, even though they are not used.
+	 * Read resources are kept until {@link #clear()} or {@link #close()} is called.
+	 * The wrapped includer is called from several threads at once, and must be thread-safe.
+	 */
+	public static class PrefetchingIncluder implements Includer, AutoCloseable
+	{
+		/** Default amount of background threads. */
+		public static final int DEFAULT_THREADS = 4;
+		
+		private static final AtomicInteger THREAD_COUNT = new AtomicInteger(0);
+		
+		/** The includer that actually resolves and reads resources. */
+		private Includer includer;
+		/** Reading threads. */
+		private ExecutorService executor;
+		/** Resolved path to resource contents. Failed reads are removed so that they are tried again. */
+		private Map<String, Future<byte[]>> resources;
+		
+		/**
+		 * Creates a new prefetching includer with {@value #DEFAULT_THREADS} background threads.
+		 * @param includer the includer that resolves and reads resources.
+		 */
+		public PrefetchingIncluder(Includer includer)
+		{
+			this(includer, DEFAULT_THREADS);
+		}
+		
+		/**
+		 * Creates a new prefetching includer.
+		 * @param includer the includer that resolves and reads resources.
+		 * @param threads the amount of background threads to read with.
+		 * @throws IllegalArgumentException if threads is less than 1.
+		 */
+		public PrefetchingIncluder(Includer includer, int threads)
+		{
+			this.includer = includer;
+			this.executor = Executors.newFixedThreadPool(threads, (runnable) -> 
+			{
+				Thread out = new Thread(runnable, "PrefetchingIncluder-" + THREAD_COUNT.incrementAndGet());
+				out.setDaemon(true);
+				return out;
+			});
+			this.resources = new ConcurrentHashMap<>();
+		}
+		
+		/**
+		 * Starts reading a resource and the resources that it includes in the background, if they are not already read.
+		 * @param path the resolved path of the resource.
+		 */
+		public void prefetch(String path)
+		{
+			fetch(path);
+		}
+		
+		/**
+		 * Clears all read resources.
+		 */
+		public void clear()
+		{
+			resources.clear();
+		}
+		
+		@Override
+		public String getIncludeResourcePath(String streamName, String path) throws IOException
+		{
+			return includer.getIncludeResourcePath(streamName, path);
+		}
+		
+		@Override
+		public InputStream getIncludeResource(String path) throws IOException
+		{
+			byte[] data;
+			try {
+				data = fetch(path).get();
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+				throw new InterruptedIOException("Interrupted while reading \"" + path + "\"");
+			} catch (ExecutionException e) {
+				if (e.getCause() instanceof IOException)
+					throw (IOException)e.getCause();
+				throw new IOException("Could not read \"" + path + "\"", e.getCause());
+			} catch (CancellationException e) {
+				throw new IOException("Includer was closed while reading \"" + path + "\"");
+			}
+			return new ByteArrayInputStream(data);
+		}
+		
+		/**
+		 * Stops the background threads and clears all read resources.
+		 * Reads that are not done yet are cancelled, and waiting calls to {@link #getIncludeResource(String)} throw an {@link IOException}.
+		 * This includer cannot be used after this is called.
+		 */
+		@Override
+		public void close()
+		{
+			for (Runnable task : executor.shutdownNow())
+				((Future<?>)task).cancel(false);
+			for (Future<byte[]> future : resources.values())
+				future.cancel(true);
+			resources.clear();
+		}
+		
+		private Future<byte[]> fetch(String path)
+		{
+			Future<byte[]> out = resources.get(path);
+			if (out != null)
+				return out;
+			Fetch task = new Fetch(path);
+			if ((out = resources.putIfAbsent(path, task)) != null)
+				return out;
+			try {
+				executor.execute(task);
+			} catch (RejectedExecutionException e) {
+				// closed.
+				resources.remove(path, task);
+				task.cancel(false);
+			}
+			return task;
+		}
+
+		// Reads a resource and starts on its includes.
+		private byte[] read(String path) throws IOException
+		{
+			byte[] out;
+			try (InputStream in = includer.getIncludeResource(path))
+			{
+				if (in == null)
+					throw new FileNotFoundException("Could not find \"" + path + "\"");
+				out = Utils.getBinaryContents(in);
+			}
+			
+			// same decoding as the lexer.
+			String text = new String(out);
+			int start = 0;
+			while (start < text.length())
+			{
+				int end = text.indexOf('\n', start);
+				if (end < 0)
+					end = text.length();
+				prefetchInclude(path, text, start, end);
+				start = end + 1;
+			}
+			return out;
+		}
+
+		// Prefetches the include on a line, if any.
+		private void prefetchInclude(String streamName, String text, int start, int end)
+		{
+			while (start < end && Character.isWhitespace(text.charAt(start)))
+				start++;
+			if (start >= end || text.charAt(start) != '#')
+				return;
+			
+			String directiveLine = text.substring(start + 1, end);
+			DirectiveParser parser = new DirectiveParser();
+			String directiveName = parser.scanNext(directiveLine);
+			if (!DIRECTIVE_INCLUDE.equalsIgnoreCase(directiveName) && !DIRECTIVE_INCLUDE_ONCE.equalsIgnoreCase(directiveName))
+				return;
+
+			String path = parser.scanNext(directiveLine);
+			if (path == null)
+				return;
+			
+			try {
+				String includePath = includer.getIncludeResourcePath(streamName, path);
+				if (includePath != null)
+					fetch(includePath);
+			} catch (IOException e) {
+				// the lexer reports this when it gets to it.
+			}
+		}
+		
+		/**
+		 * A background read that removes itself from the read resources if it fails.
+		 */
+		private class Fetch extends FutureTask<byte[]>
+		{
+			private String path;
+			
+			private Fetch(String path)
+			{
+				super(() -> read(path));
+				this.path = path;
+			}
+			
+			@Override
+			protected void setException(Throwable t)
+			{
+				resources.remove(path, this);
+				super.setException(t);
+			}
+		}
+		
+	}
+	
+	/**
+	 * An includer that reads from an in-memory archive of resources, such as a zip or jar file that was read once.
+	 * <p>
+	 * Resources are stored by their path in the archive, with <code>/</code> separators and no leading <code>/</code>.
+	 * Include paths are resolved relative to the including stream's directory in the archive first, then from the archive's root.
+	 * <code>.</code> and <code>..</code> path segments are resolved. Paths that are not in the archive are not resolved.
+	 * <p>
+	 * Read the first stream via {@link #getIncludeResource(String)} so that its name is a path in the archive.
+	 * This class is thread-safe once created.
+	 */
+	public static class ArchiveIncluder implements Includer
+	{
+		/** Archive path to contents. */
+		private Map<String, byte[]> resources;
+		
+		/**
+		 * Creates a new archive includer from a map of archive paths to contents.
+		 * The map is copied.
+		 * @param resources the map of archive paths to contents.
+		 */
+		public ArchiveIncluder(Map<String, byte[]> resources)
+		{
+			this.resources = new HashMap<>(resources.size() * 2);
+			for (Map.Entry<String, byte[]> entry : resources.entrySet())
+			{
+				String path = normalizePath(entry.getKey());
+				if (path != null)
+					this.resources.put(path, entry.getValue());
+			}
+		}
+		
+		/**
+		 * Creates a new archive includer from a zip file.
+		 * @param file the zip file.
+		 * @return a new includer.
+		 * @throws IOException if the file cannot be read.
+		 */
+		public static ArchiveIncluder fromZip(File file) throws IOException
+		{
+			try (InputStream in = new FileInputStream(file))
+			{
+				return fromZip(in);
+			}
+		}
+		
+		/**
+		 * Creates a new archive includer from zip data, read in one pass.
+		 * The stream is not closed.
+		 * @param in the input stream to read zip data from.
+		 * @return a new includer.
+		 * @throws IOException if the stream cannot be read.
+		 */
+		public static ArchiveIncluder fromZip(InputStream in) throws IOException
+		{
+			Map<String, byte[]> out = new HashMap<>();
+			ZipInputStream zin = new ZipInputStream(new BufferedInputStream(in));
+			ZipEntry entry;
+			while ((entry = zin.getNextEntry()) != null)
+			{
+				if (!entry.isDirectory())
+					out.put(entry.getName(), Utils.getBinaryContents(zin));
+			}
+			return new ArchiveIncluder(out);
+		}
+		
+		/**
+		 * @return the paths of all of the resources in this includer's archive.
+		 */
+		public Set<String> getPaths()
+		{
+			return Collections.unmodifiableSet(resources.keySet());
+		}
+		
+		@Override
+		public String getIncludeResourcePath(String streamName, String path) throws IOException
+		{
+			int lidx = streamName.lastIndexOf('/');
+			if (lidx >= 0 && !path.startsWith("/"))
+			{
+				String out = normalizePath(streamName.substring(0, lidx + 1) + path);
+				if (out != null && resources.containsKey(out))
+					return out;
+			}
+			String out = normalizePath(path);
+			return out != null && resources.containsKey(out) ? out : null;
+		}
+		
+		@Override
+		public InputStream getIncludeResource(String path) throws IOException
+		{
+			byte[] data = resources.get(normalizePath(path));
+			if (data == null)
+				throw new FileNotFoundException("Could not find \"" + path + "\" in archive");
+			return new ByteArrayInputStream(data);
+		}
+		
+		// Resolves "." and ".." and drops leading and repeated separators. Returns null if the path climbs out of the root.
+		private static String normalizePath(String path)
+		{
+			if (path == null)
+				return null;
+			Deque<String> segments = new LinkedList<>();
+			for (String segment : path.replace('\\', '/').split("/"))
+			{
+				if (segment.isEmpty() || segment.equals("."))
+					continue;
+				else if (segment.equals(".."))
+				{
+					if (segments.isEmpty())
+						return null;
+					segments.pollLast();
+				}
+				else
+					segments.add(segment);
+			}
+			return String.join("/", segments);
+		}
+		
+	}
+	
 	/** Lambda interface that returns a string. */
 	@FunctionalInterface
 	public interface StringProvider
@@ -165,14 +655,67 @@ public class PreprocessorLexer extends Lexer
 	
 	}
 
+	/**
+	 * Listener for the work that a lexer does, for instrumentation.
+	 * Methods are called on the thread that is reading tokens.
+	 */
+	public interface Listener
+	{
+		/**
+		 * Called for each token returned by {@link PreprocessorLexer#nextToken()}, including tokens from macro expansions.
+		 * @param token the token.
+		 */
+		void onToken(Token token);
+
+		/**
+		 * Called for each directive processed, including directives in inactive <code>#ifdef</code> blocks.
+		 * @param streamName the name of the stream that contains the directive.
+		 * @param directiveName the directive name.
+		 */
+		void onDirective(String streamName, String directiveName);
+
+		/**
+		 * Called when an included stream is opened, before it is read.
+		 * @param streamName the name of the stream that contains the include.
+		 * @param includePath the resolved path of the included stream.
+		 */
+		void onInclude(String streamName, String includePath);
+
+		/**
+		 * Called for each macro expansion.
+		 * @param streamName the name of the stream that contains the macro use.
+		 * @param macroName the macro name.
+		 */
+		void onMacroExpansion(String streamName, String macroName);
+
+		/**
+		 * Called when the end of a stream is reached, after it is closed.
+		 * @param streamName the name of the stream.
+		 * @param characters the amount of characters read from the stream.
+		 */
+		void onStreamEnd(String streamName, long characters);
+	}
+
+	/** The lexer kernel, for tokenizing macros. */
+	private Kernel kernel;
 	/** Is this at the beginning of a line? */
 	private boolean lineBeginning;
-	/** Map for define token to macro string. */
-	private Map<String, StringProvider> macroMap;
+	/** Map for define token to macro. Case-insensitive, so that it can be searched without changing a token's case. */
+	private TreeMap<String, Macro> macroMap;
+	/** Tokens from macro expansions that have not been returned yet. */
+	private Deque<Token> macroTokens;
 	/** Latest IF clause result. */
 	private Deque<Boolean> ifStack;
 	/** Includer that defines how to find a file. */
 	private Includer includer;
+	/** Listener for instrumentation, if any. */
+	private Listener listener;
+	/** Resolved paths of every included stream. */
+	private Set<String> includedPaths;
+	/** Resolved paths of streams that are never included again (<code>#pragma once</code>). */
+	private Set<String> onceOnlyPaths;
+	/** Include guard detection, by stream name. Streams that can't have a guard are removed. */
+	private Map<String, IncludeGuard> includeGuards;
 
 	/** List of errors. */
 	private List<String> errors;
@@ -219,11 +762,17 @@ public class PreprocessorLexer extends Lexer
 	public PreprocessorLexer(Kernel kernel, String name, Reader in)
 	{
 		super(kernel, name, in);
+		this.kernel = kernel;
 		this.lineBeginning = true;
-		this.macroMap = new HashMap<>();
+		this.macroMap = new TreeMap<>(String.CASE_INSENSITIVE_ORDER);
+		this.macroTokens = new ArrayDeque<>();
 		this.includer = DEFAULT_INCLUDER;
+		this.listener = null;
 		this.errors = new LinkedList<>();
 		this.ifStack = new LinkedList<>();
+		this.includedPaths = new HashSet<>();
+		this.onceOnlyPaths = new HashSet<>();
+		this.includeGuards = new HashMap<>();
 	}
 
 	/**
@@ -237,6 +786,15 @@ public class PreprocessorLexer extends Lexer
 		this.includer = includer;
 	}
 	
+	/**
+	 * Sets the listener to report this lexer's work to.
+	 * @param listener the listener to use, or null for none.
+	 */
+	public void setListener(Listener listener)
+	{
+		this.listener = listener;
+	}
+	
 	/**
 	 * Adds a define macro to this lexer.
 	 * @param macro the macro identifier.
@@ -244,7 +802,7 @@ public class PreprocessorLexer extends Lexer
 	 */
 	public void addDefine(String macro, String tokenString)
 	{
-		macroMap.put(macro.toLowerCase(), ()->tokenString);
+		macroMap.put(macro, new Macro(macro, tokenString));
 	}
 	
 	/**
@@ -254,23 +812,166 @@ public class PreprocessorLexer extends Lexer
 	 */
 	public void addDefine(String macro, StringProvider tokenProvider)
 	{
-		macroMap.put(macro.toLowerCase(), tokenProvider);
+		macroMap.put(macro, new Macro(macro, tokenProvider));
+	}
+	
+	/**
+	 * Adds a function-like define macro to this lexer.
+	 * @param macro the macro identifier.
+	 * @param parameters the names of the macro's parameters.
+	 * @param tokenString the string to push onto the lexer, with parameters replaced by their arguments.
+	 */
+	public void addDefine(String macro, String[] parameters, String tokenString)
+	{
+		macroMap.put(macro, new Macro(macro, parameters.clone(), tokenString));
 	}
 	
 	@Override
 	public Token nextToken() throws IOException
 	{
+		Token token = nextExpandedToken();
+		if (token != null && listener != null)
+			listener.onToken(token);
+		return token;
+	}
+	
+	@Override
+	protected void streamEnded(String streamName, long characters)
+	{
+		if (listener != null)
+			listener.onStreamEnd(streamName, characters);
+	}
+	
+	// Gets the next token, expanding macros.
+	private Token nextExpandedToken() throws IOException
+	{
+		while (true)
+		{
+			Token token = nextUnexpandedToken();
+			if (token == null || macroMap.isEmpty())
+				return token;
+			
+			Macro macro = macroMap.get(token.getLexeme());
+			if (macro == null)
+				return token;
+			
+			MacroExpansionEvent event = EventSupport.AVAILABLE ? MacroExpansionEvent.start(token.getStreamName(), macro.name) : null;
+			List<List<Token>> arguments = null;
+			if (macro.parameters != null && (arguments = readMacroArguments(token, macro)) == null)
+				return token;
+			if (listener != null)
+				listener.onMacroExpansion(token.getStreamName(), macro.name);
+			int expandedCount = macroTokens.size();
+
+			// expanded tokens are checked for macros, too.
+			String streamName = token.getStreamName() + ":" + macro.name;
+			Token[] tokens = macro.getTokens();
+			for (int i = tokens.length - 1; i >= 0; i--)
+			{
+				int parameterIndex = arguments != null ? macro.parameterIndexes[i] : -1;
+				if (parameterIndex >= 0)
+				{
+					List<Token> argument = arguments.get(parameterIndex);
+					for (int j = argument.size() - 1; j >= 0; j--)
+						macroTokens.addFirst(copyToken(argument.get(j), argument.get(j).getStreamName()));
+				}
+				else
+				{
+					macroTokens.addFirst(copyToken(tokens[i], streamName));
+				}
+			}
+			if (event != null)
+				event.finish(macroTokens.size() - expandedCount);
+		}
+	}
+	
+	// Gets the next token from a macro expansion or the stream, without expanding it.
+	private Token nextUnexpandedToken() throws IOException
+	{
+		if (!macroTokens.isEmpty())
+			return macroTokens.pollFirst();
+		
 		Token token = super.nextToken();
+		// a token outside of an include guard means that there is no guard.
+		if (token != null && !includeGuards.isEmpty())
+		{
+			IncludeGuard guard = includeGuards.get(token.getStreamName());
+			if (guard != null && guard.phase != IncludeGuard.PHASE_OPEN)
+				includeGuards.remove(token.getStreamName());
+		}
+		return token;
+	}
+	
+	// Reads the arguments of a function-like macro, or returns null (and puts back the read token) if its name is not followed by "(".
+	private List<List<Token>> readMacroArguments(Token nameToken, Macro macro) throws IOException
+	{
+		Token token = nextUnexpandedToken();
 		if (token == null)
 			return null;
+		if (!isDelimiter(token, "("))
+		{
+			macroTokens.addFirst(token);
+			return null;
+		}
 		
-		String macro = token.getLexeme().toLowerCase();
-		if (macroMap.containsKey(macro))
+		List<List<Token>> out = new ArrayList<>(macro.parameters.length);
+		List<Token> argument = new ArrayList<>();
+		int depth = 0;
+		while (true)
 		{
-			pushStream(getCurrentStreamName() + ":" + macro, new StringReader(macroMap.get(macro).get()));
-			return nextToken();
+			if ((token = nextUnexpandedToken()) == null)
+			{
+				throw new PreprocessorException(getInfoLine(nameToken.getStreamName(), nameToken.getLineNumber(), nameToken.getLexeme(), 
+					"Expected \")\" to end the arguments of macro " + nameToken.getLexeme()));
+			}
+			
+			if (depth == 0 && isDelimiter(token, ")"))
+				break;
+			else if (depth == 0 && isDelimiter(token, ","))
+			{
+				out.add(argument);
+				argument = new ArrayList<>();
+				continue;
+			}
+			else if (isDelimiter(token, "(") || isDelimiter(token, "[") || isDelimiter(token, "{"))
+				depth++;
+			else if (isDelimiter(token, ")") || isDelimiter(token, "]") || isDelimiter(token, "}"))
+				depth--;
+			argument.add(token);
 		}
-		return token;
+		
+		// no tokens at all is no arguments, unless one is expected.
+		if (!out.isEmpty() || !argument.isEmpty() || macro.parameters.length == 1)
+			out.add(argument);
+		
+		if (out.size() != macro.parameters.length)
+		{
+			throw new PreprocessorException(getInfoLine(nameToken.getStreamName(), nameToken.getLineNumber(), nameToken.getLexeme(), 
+				"Macro " + nameToken.getLexeme() + " expects " + macro.parameters.length + " argument(s), but got " + out.size() + "."));
+		}
+		return out;
+	}
+	
+	private static boolean isDelimiter(Token token, String lexeme)
+	{
+		return token.getType() != Kernel.TYPE_STRING && lexeme.equals(token.getLexeme());
+	}
+	
+	private static Token copyToken(Token token, String streamName)
+	{
+		return new Token(streamName, token.getType(), token.getLexeme(), token.getLineNumber(), token.getCharIndex());
+	}
+	
+	/**
+	 * Creates the lexer used for reading a macro's tokens.
+	 * By default, this is a plain {@link Lexer} that uses this lexer's kernel.
+	 * @param name the name of the macro stream.
+	 * @param macroText the macro's text.
+	 * @return a new lexer.
+	 */
+	protected Lexer createMacroLexer(String name, String macroText)
+	{
+		return new Lexer(kernel, name, new StringReader(macroText));
 	}
 	
 	protected String getInfoLine(String streamName, int lineNumber, String token, String message)
@@ -291,6 +992,14 @@ public class PreprocessorLexer extends Lexer
 	{
 		while (true)
 		{
+			// inactive region: jump to the next directive line.
+			if (lineBeginning && !ifStack.isEmpty() && !ifStack.peek() && skipToLineStart('#'))
+			{
+				lineBeginning = false;
+				preprocess();
+				continue;
+			}
+
 			char c = super.readChar();
 			
 			if (c == END_OF_LEXER)
@@ -438,7 +1147,16 @@ public class PreprocessorLexer extends Lexer
 		parser.reset();
 		
 		String directiveName = parser.scanNext(directiveLine);
+		if (listener != null)
+			listener.onDirective(streamName, directiveName);
 
+		if (!includeGuards.isEmpty())
+		{
+			IncludeGuard guard = includeGuards.get(streamName);
+			if (guard != null)
+				updateIncludeGuard(guard, streamName, directiveName, directiveLine);
+		}
+		
 		// #EndIf
 		if (directiveName.equalsIgnoreCase(DIRECTIVE_ENDIF))
 		{
@@ -456,24 +1174,48 @@ public class PreprocessorLexer extends Lexer
 				ifStack.push(!ifStack.poll());
 		}
 		// #Include
-		else if (directiveName.equalsIgnoreCase(DIRECTIVE_INCLUDE))
+		else if (directiveName.equalsIgnoreCase(DIRECTIVE_INCLUDE) || directiveName.equalsIgnoreCase(DIRECTIVE_INCLUDE_ONCE))
 		{
 			String path = parser.scanNext(directiveLine);
 			
-			String includePath;
-			InputStream includeIn;
+			String includePath = null;
+			InputStream includeIn = null;
+			boolean skipped = false;
+			IncludeEvent event = EventSupport.AVAILABLE ? IncludeEvent.start(streamName, path) : null;
 			try {
 				includePath = includer.getIncludeResourcePath(streamName, path);
 				if (includePath == null)
+				{
 					errors.add(getInfoLine(streamName, lineNumber, null, "Could not resolve path: \"" + path + "\""));
+					return;
+				}
+				
+				// skip before opening, if possible.
+				IncludeGuard guard = includeGuards.get(includePath);
+				skipped = (directiveName.equalsIgnoreCase(DIRECTIVE_INCLUDE_ONCE) && includedPaths.contains(includePath))
+					|| onceOnlyPaths.contains(includePath)
+					|| (guard != null && guard.phase == IncludeGuard.PHASE_CLOSED && macroMap.containsKey(guard.macro));
+				if (skipped)
+					return;
+				
 				includeIn = includer.getIncludeResource(includePath);
 				if (includeIn == null)
+				{
 					errors.add(getInfoLine(streamName, lineNumber, null, "Could not resolve path: \"" + includePath + "\""));
+					return;
+				}
 
+				includedPaths.add(includePath);
+				includeGuards.put(includePath, new IncludeGuard());
+				if (listener != null)
+					listener.onInclude(streamName, includePath);
 				pushStream(includePath, new InputStreamReader(includeIn));
 				
 			} catch (IOException e) {
 				errors.add(getInfoLine(streamName, lineNumber, null, "Could not resolve path. "+ e.getMessage()));
+			} finally {
+				if (event != null)
+					event.finish(includePath, includeIn != null, skipped);
 			}
 		}
 		// #Define
@@ -486,9 +1228,35 @@ public class PreprocessorLexer extends Lexer
 			else if (parser.state == DirectiveParser.STATE_STRING)
 				errors.add(getInfoLine(streamName, lineNumber, null, "Expected identifier type token after #define, not string."));
 
-			String data = parser.getRest(directiveLine).trim();
-			
-			macroMap.put(defineToken.toLowerCase(), ()->data);
+			int paren = defineToken.indexOf('(');
+			if (paren > 0 && parser.state != DirectiveParser.STATE_STRING)
+			{
+				// function-like: parameters directly follow the name.
+				int start = directiveLine.indexOf(defineToken, directiveName.length()) + paren + 1;
+				int end = directiveLine.indexOf(')', start);
+				if (end < 0)
+				{
+					errors.add(getInfoLine(streamName, lineNumber, null, "Expected \")\" to end macro parameters after #define"));
+					return;
+				}
+				
+				String parameterList = directiveLine.substring(start, end).trim();
+				String[] parameters = parameterList.isEmpty() ? new String[0] : parameterList.split(",");
+				for (int i = 0; i < parameters.length; i++)
+				{
+					parameters[i] = parameters[i].trim();
+					if (parameters[i].isEmpty() || parameters[i].chars().anyMatch(Character::isWhitespace))
+						errors.add(getInfoLine(streamName, lineNumber, null, "Expected parameter name in macro parameters after #define"));
+				}
+				
+				String name = defineToken.substring(0, paren);
+				macroMap.put(name, new Macro(name, parameters, directiveLine.substring(end + 1).trim()));
+			}
+			else
+			{
+				String data = parser.getRest(directiveLine).trim();
+				macroMap.put(defineToken, new Macro(defineToken, data));
+			}
 		}
 		// #Undefine
 		else if (directiveName.equalsIgnoreCase(DIRECTIVE_UNDEFINE))
@@ -500,7 +1268,7 @@ public class PreprocessorLexer extends Lexer
 			else if (parser.state == DirectiveParser.STATE_STRING)
 				errors.add(getInfoLine(streamName, lineNumber, defineToken, "Expected identifier type token after #define, not string."));
 			
-			macroMap.remove(defineToken.toLowerCase());
+			macroMap.remove(defineToken);
 		}
 		// #IfDef
 		else if (directiveName.equalsIgnoreCase(DIRECTIVE_IFDEF))
@@ -512,7 +1280,7 @@ public class PreprocessorLexer extends Lexer
 			else if (parser.state == DirectiveParser.STATE_STRING)
 				errors.add(getInfoLine(streamName, lineNumber, defineToken, "Expected identifier type token after #define, not string."));
 
-			ifStack.push(macroMap.containsKey(defineToken.toLowerCase()));
+			ifStack.push(macroMap.containsKey(defineToken));
 		}
 		// #IfNDef
 		else if (directiveName.equalsIgnoreCase(DIRECTIVE_IFNDEF))
@@ -524,7 +1292,17 @@ public class PreprocessorLexer extends Lexer
 			else if (parser.state == DirectiveParser.STATE_STRING)
 				errors.add(getInfoLine(streamName, lineNumber, defineToken, "Expected identifier type token after #define, not string."));
 
-			ifStack.push(!macroMap.containsKey(defineToken.toLowerCase()));
+			ifStack.push(!macroMap.containsKey(defineToken));
+		}
+		// #Pragma
+		else if (directiveName.equalsIgnoreCase(DIRECTIVE_PRAGMA))
+		{
+			String pragma = parser.scanNext(directiveLine);
+			
+			if (pragma.equalsIgnoreCase(PRAGMA_ONCE))
+				onceOnlyPaths.add(streamName);
+			else
+				errors.add(getInfoLine(streamName, lineNumber, pragma, "Not a valid pragma: "+pragma));
 		}
 		else
 		{
@@ -532,6 +1310,161 @@ public class PreprocessorLexer extends Lexer
 		}
 	}
 	
+	// Updates include guard detection for a directive in a stream, before the directive is processed.
+	private void updateIncludeGuard(IncludeGuard guard, String streamName, String directiveName, String directiveLine)
+	{
+		if (directiveName.equalsIgnoreCase(DIRECTIVE_PRAGMA))
+			return;
+		
+		switch (guard.phase)
+		{
+			case IncludeGuard.PHASE_START:
+			{
+				if (directiveName.equalsIgnoreCase(DIRECTIVE_IFNDEF))
+				{
+					DirectiveParser parser = new DirectiveParser();
+					parser.scanNext(directiveLine);
+					guard.macro = parser.scanNext(directiveLine);
+					guard.depth = ifStack.size();
+					guard.phase = IncludeGuard.PHASE_OPEN;
+				}
+				else
+					includeGuards.remove(streamName);
+			}
+			break;
+			
+			case IncludeGuard.PHASE_OPEN:
+			{
+				if (ifStack.size() == guard.depth + 1)
+				{
+					if (directiveName.equalsIgnoreCase(DIRECTIVE_ENDIF))
+						guard.phase = IncludeGuard.PHASE_CLOSED;
+					else if (directiveName.equalsIgnoreCase(DIRECTIVE_ELSE))
+						includeGuards.remove(streamName);
+				}
+			}
+			break;
+
+			default:
+				includeGuards.remove(streamName);
+				break;
+		}
+	}
+	
+	/**
+	 * Include guard detection state for a stream.
+	 * A stream has a guard if its first directive is an <code>#ifndef</code>, 
+	 * and nothing but whitespace and <code>#pragma</code> is outside of that block.
+	 */
+	private static class IncludeGuard
+	{
+		/** Nothing read yet. */
+		private static final int PHASE_START = 0;
+		/** Inside the guard block. */
+		private static final int PHASE_OPEN = 1;
+		/** Guard block ended. */
+		private static final int PHASE_CLOSED = 2;
+		
+		/** The guard macro. */
+		private String macro;
+		/** The size of the "if" stack before the guard. */
+		private int depth;
+		/** Current phase. */
+		private int phase;
+		
+		IncludeGuard()
+		{
+			this.macro = null;
+			this.depth = 0;
+			this.phase = PHASE_START;
+		}
+	}
+	
+	/**
+	 * A defined macro.
+	 * Macros with fixed text are only tokenized once, on first use. 
+	 * Macros with a {@link StringProvider} are tokenized on each use, since their text can change.
+	 */
+	private class Macro
+	{
+		/** Macro name, in lower case. */
+		private String name;
+		/** Parameter names, or null if not function-like. */
+		private String[] parameters;
+		/** Fixed macro text, or null if provided. */
+		private String text;
+		/** Text provider, if not fixed. */
+		private StringProvider provider;
+		/** Cached tokens for fixed text. */
+		private Token[] tokens;
+		/** For each cached token, the index of the parameter that it is, or -1 if not a parameter. */
+		private int[] parameterIndexes;
+		
+		Macro(String name, String text)
+		{
+			this(name, null, text);
+		}
+		
+		Macro(String name, String[] parameters, String text)
+		{
+			this.name = name.toLowerCase();
+			this.parameters = parameters;
+			this.text = text;
+			this.provider = null;
+			this.tokens = null;
+			this.parameterIndexes = null;
+		}
+		
+		Macro(String name, StringProvider provider)
+		{
+			this.name = name.toLowerCase();
+			this.parameters = null;
+			this.text = null;
+			this.provider = provider;
+			this.tokens = null;
+			this.parameterIndexes = null;
+		}
+		
+		// Gets the tokens of this macro.
+		Token[] getTokens() throws IOException
+		{
+			if (provider != null)
+				return tokenize(provider.get());
+			if (tokens == null)
+			{
+				Token[] out = tokenize(text);
+				if (parameters != null)
+				{
+					parameterIndexes = new int[out.length];
+					for (int i = 0; i < out.length; i++)
+						parameterIndexes[i] = parameterIndex(out[i]);
+				}
+				tokens = out;
+			}
+			return tokens;
+		}
+		
+		private int parameterIndex(Token token)
+		{
+			if (token.getType() == Kernel.TYPE_STRING)
+				return -1;
+			for (int i = 0; i < parameters.length; i++)
+				if (parameters[i].equalsIgnoreCase(token.getLexeme()))
+					return i;
+			return -1;
+		}
+		
+		private Token[] tokenize(String macroText) throws IOException
+		{
+			Lexer lexer = createMacroLexer(name, macroText);
+			List<Token> out = new ArrayList<>();
+			Token token;
+			while ((token = lexer.nextToken()) != null)
+				out.add(token);
+			return out.toArray(new Token[out.size()]);
+		}
+	}
+	
 	// Parser state.
 	private static class DirectiveParser
 	{
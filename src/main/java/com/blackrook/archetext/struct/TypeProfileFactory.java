@@ -13,6 +13,8 @@ import java.lang.reflect.Modifier;
 import java.util.HashMap;
 
 import com.blackrook.archetext.annotation.ATIdentity;
+import com.blackrook.archetext.jfr.EventSupport;
+import com.blackrook.archetext.jfr.TypeProfileEvent;
 
 /**
  * A factory that produces type profiles for POJOs and data objects.
@@ -56,8 +58,11 @@ public class TypeProfileFactory
 				// early out.
 				if ((out = (Profile<T>)generatedProfiles.get(clazz)) == null)
 				{
+					TypeProfileEvent event = EventSupport.AVAILABLE ? TypeProfileEvent.start(clazz) : null;
 					out = new Profile<>(clazz, policy);
 					generatedProfiles.put(clazz, out);
+					if (event != null)
+						event.finish();
 				}
 			}
 		}
@@ -7,6 +7,8 @@
  ******************************************************************************/
 package com.blackrook.archetext.struct;
 
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
 import java.io.InputStream;
 import java.lang.reflect.Array;
 import java.lang.reflect.Constructor;
@@ -23,6 +25,8 @@ import com.blackrook.archetext.ArcheTextObject;
 import com.blackrook.archetext.annotation.ATIgnore;
 import com.blackrook.archetext.annotation.ATName;
 import com.blackrook.archetext.exception.ArcheTextExportException;
+import com.blackrook.archetext.jfr.EventSupport;
+import com.blackrook.archetext.jfr.ObjectBindEvent;
 import com.blackrook.archetext.struct.TypeProfileFactory.Profile;
 import com.blackrook.archetext.struct.TypeProfileFactory.Profile.FieldInfo;
 import com.blackrook.archetext.struct.TypeProfileFactory.Profile.MethodInfo;
@@ -99,6 +103,23 @@ public final class Utils
 		return Thread.currentThread().getContextClassLoader().getResourceAsStream(pathString);
 	}
 
+	/**
+	 * Reads the rest of an {@link InputStream} into a byte array.
+	 * The stream is not closed.
+	 * @param in the input stream.
+	 * @return the bytes read.
+	 * @throws IOException if the stream cannot be read.
+	 */
+	public static byte[] getBinaryContents(InputStream in) throws IOException
+	{
+		ByteArrayOutputStream out = new ByteArrayOutputStream(8192);
+		byte[] buffer = new byte[8192];
+		int n;
+		while ((n = in.read(buffer)) > 0)
+			out.write(buffer, 0, n);
+		return out.toByteArray();
+	}
+
 	/**
 	 * Tests if a class is actually an array type.
 	 * @param clazz the class to test.
@@ -520,7 +541,9 @@ public final class Utils
 	@SuppressWarnings("unchecked")
 	public static <T> T applyToObject(ArcheTextObject atObject, T object)
 	{
+		ObjectBindEvent event = EventSupport.AVAILABLE ? ObjectBindEvent.start(atObject.getType(), atObject.getIdentity(), object.getClass()) : null;
 		Profile<T> profile = DEFAULT_PROFILEFACTORY.getProfile((Class<T>)object.getClass());
+		int memberCount = 0;
 		Iterator<String> it = atObject.getAvailableFieldNames().iterator();
 		while (it.hasNext())
 		{
@@ -528,9 +551,15 @@ public final class Utils
 			FieldInfo fieldInfo = null; 
 			MethodInfo setterInfo = null;
 			if ((fieldInfo = isNull(profile.getPublicFieldsByAlias().get(member), profile.getPublicFieldsByName().get(member))) != null)
+			{
 				setFieldValue(object, fieldInfo.getField(), atObject.get(member, fieldInfo.getType()));
+				memberCount++;
+			}
 			else if ((setterInfo = isNull(profile.getSetterMethodsByAlias().get(member), profile.getSetterMethodsByName().get(member))) != null)
+			{
 				invokeBlind(setterInfo.getMethod(), object, atObject.get(member, setterInfo.getType()));
+				memberCount++;
+			}
 		}
 		
 		if (profile.getIdentityField() != null)
@@ -545,6 +574,8 @@ public final class Utils
 			invokeBlind(mi.getMethod(), object, atObject.getIdentity());
 		}
 		
+		if (event != null)
+			event.finish(memberCount);
 		return object;
 	}
 